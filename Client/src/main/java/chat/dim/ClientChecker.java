@@ -78,10 +78,10 @@ public class ClientChecker extends EntityChecker {
     public boolean queryMeta(ID identifier) {
         if (!isMetaQueryExpired(identifier)) {
             // query not expired yet
-            Log.debug("meta query not expired yet: " + identifier);
+            Log.debug("meta query not expired yet: {}", identifier);
             return false;
         }
-        Log.info("querying meta for: " + identifier);
+        Log.info("querying meta for: {}", identifier);
         CommonMessenger messenger = getMessenger();
         Content content = MetaCommand.query(identifier);
         Pair<InstantMessage, ReliableMessage> pair;
@@ -93,11 +93,11 @@ public class ClientChecker extends EntityChecker {
     public boolean queryDocuments(ID identifier, List<Document> documents) {
         if (!isDocumentQueryExpired(identifier)) {
             // query not expired yet
-            Log.debug("document query not expired yet: " + identifier);
+            Log.debug("document query not expired yet: {}", identifier);
             return false;
         }
         Date lastTime = getLastDocumentTime(identifier, documents);
-        Log.info("querying documents for: " + identifier + ", last time: " + lastTime);
+        Log.info("querying documents for: {}, last time: {}", identifier, lastTime);
         CommonMessenger messenger = getMessenger();
         Content content = DocumentCommand.query(identifier, lastTime);
         Pair<InstantMessage, ReliableMessage> pair;
@@ -109,7 +109,7 @@ public class ClientChecker extends EntityChecker {
     public boolean queryMembers(ID group, List<ID> members) {
         if (!isMembersQueryExpired(group)) {
             // query not expired yet
-            Log.debug("members query not expired yet: " + group);
+            Log.debug("members query not expired yet: {}", group);
             return false;
         }
         ClientFacebook facebook = getFacebook();
@@ -120,7 +120,7 @@ public class ClientChecker extends EntityChecker {
         }
         ID me = user.getIdentifier();
         Date lastTime = getLastGroupHistoryTime(group);
-        Log.info("querying members for group: " + group + ", last time: " + lastTime);
+        Log.info("querying members for group: {}, last time: {}", group, lastTime);
         // build query command for group members
         // TODO: use 'GroupHistory.queryGroupHistory(group, lastTime)' instead
         Content command = QueryCommand.query(group, lastTime);
@@ -139,11 +139,11 @@ public class ClientChecker extends EntityChecker {
         Pair<InstantMessage, ReliableMessage> pair = null;
         ID lastMember = getLastActiveMember(group);
         if (lastMember != null) {
-            Log.info("querying members from: " + lastMember + ", group: " + group);
+            Log.info("querying members from: {}, group: {}", lastMember, group);
             CommonMessenger messenger = getMessenger();
             pair = messenger.sendContent(command, me, lastMember, 1);
         }
-        Log.error("group not ready: " + group);
+        Log.error("group not ready: {}", group);
         return pair != null && pair.second != null;
     }
 
@@ -154,16 +154,16 @@ public class ClientChecker extends EntityChecker {
         assert group != null : "group command error: " + command;
         List<ID> admins = facebook.getAdministrators(group);
         if (admins == null || admins.isEmpty()) {
-            Log.warning("administrators not found for group: " + group);
+            Log.warning("administrators not found for group: {}", group);
             return false;
         }
         int success = 0;
         Pair<InstantMessage, ReliableMessage> pair;
         // querying members from admins
-        Log.info("querying members from admins: " + admins + ", group: " + group);
+        Log.info("querying members from admins: {}, group: {}", admins, group);
         for (ID receiver : admins) {
             if (sender.equals(receiver)) {
-                Log.warning("ignore cycled querying: " + sender + ", group: " + group);
+                Log.warning("ignore cycled querying: {}, group: {}", sender, group);
                 continue;
             }
             pair = messenger.sendContent(command, sender, receiver, 1);
@@ -177,7 +177,7 @@ public class ClientChecker extends EntityChecker {
         }
         ID lastMember = getLastActiveMember(group);
         if (lastMember != null && !admins.contains(lastMember)) {
-            Log.info("querying members from: " + lastMember + ", group: " + group);
+            Log.info("querying members from: {}, group: {}", lastMember, group);
             messenger.sendContent(command, sender, lastMember, 1);
         }
         return true;
@@ -190,15 +190,15 @@ public class ClientChecker extends EntityChecker {
         assert group != null : "group command error: " + command;
         ID owner = facebook.getOwner(group);
         if (owner == null) {
-            Log.warning("owner not found for group: " + group);
+            Log.warning("owner not found for group: {}", group);
             return false;
         } else if (owner.equals(sender)) {
-            Log.error("you are the owner of group: " + group);
+            Log.error("you are the owner of group: {}", group);
             return false;
         }
         Pair<InstantMessage, ReliableMessage> pair;
         // querying members from owner
-        Log.info("querying members from owner: " + owner + ", group: " + group);
+        Log.info("querying members from owner: {}, group: {}", owner, group);
         pair = messenger.sendContent(command, sender, owner, 1);
         if (pair == null || pair.second == null) {
             // failed
@@ -206,7 +206,7 @@ public class ClientChecker extends EntityChecker {
         }
         ID lastMember = getLastActiveMember(group);
         if (lastMember != null && !lastMember.equals(owner)) {
-            Log.info("querying members from: " + lastMember + ", group: " + group);
+            Log.info("querying members from: {}, group: {}", lastMember, group);
             messenger.sendContent(command, sender, lastMember, 1);
         }
         return true;
@@ -217,15 +217,15 @@ public class ClientChecker extends EntityChecker {
         CommonMessenger messenger = getMessenger();
         ID me = ID.parse(visa.get("did"));
         if (me == null || me.equals(receiver)) {
-            Log.warning("skip cycled message: " + receiver);
+            Log.warning("skip cycled message: {}", receiver);
             return false;
         }
         if (!isDocumentResponseExpired(receiver, updated)) {
             // response not expired yet
-            Log.debug("visa response not expired yet: " + receiver);
+            Log.debug("visa response not expired yet: {}", receiver);
             return false;
         }
-        Log.info("push visa document: " + me + " => " + receiver);
+        Log.info("push visa document: {} => {}", me, receiver);
         Content content = DocumentUtils.response(me, null, visa);
         Pair<InstantMessage, ReliableMessage> pair;
         pair = messenger.sendContent(content, me, receiver, 1);
@@ -36,6 +36,7 @@ import java.util.Locale;
 
 import chat.dim.core.Packer;
 import chat.dim.core.Processor;
+import chat.dim.daemon.Daemons;
 import chat.dim.dbi.SessionDBI;
 import chat.dim.log.Log;
 import chat.dim.mkm.Station;
@@ -133,7 +134,7 @@ public abstract class Terminal extends Runner implements SessionState.Delegate {
             if (session.isActive()) {
                 // current session is active
                 Station station = session.getStation();
-                Log.debug("current station: " + station);
+                Log.debug("current station: {}", station);
                 if (station.getPort() == port && station.getHost().equals(host)) {
                     // same target
                     Log.warning("active session connected to " + host + ":" + port);
@@ -143,7 +144,7 @@ public abstract class Terminal extends Runner implements SessionState.Delegate {
             session.stop();
             messenger = null;
         }
-        Log.info("connecting to " + host + ":" + port + " ...");
+        Log.info("connecting to {}:{} ...", host, port);
         // create new messenger with session
         Station station = createStation(host, port);
         ClientSession session = createSession(station);
@@ -233,8 +234,7 @@ public abstract class Terminal extends Runner implements SessionState.Delegate {
     }
 
     public void start() {
-        Thread thread = new Thread(this);
-        thread.setDaemon(true);
+        Thread thread = Daemons.newThread(this);
         thread.start();
     }
 
@@ -350,7 +350,7 @@ public abstract class Terminal extends Runner implements SessionState.Delegate {
                 Log.warning("current user not set");
                 return;
             }
-            Log.info("connect for user: " + user);
+            Log.info("connect for user: {}", user);
             ClientSession session = messenger.getSession();
             SocketAddress remote = session.getRemoteAddress();
             if (remote == null) {
@@ -361,7 +361,7 @@ public abstract class Terminal extends Runner implements SessionState.Delegate {
             if (docker == null) {
                 Log.error("failed to connect: " + remote);
             } else {
-                Log.info("connected to: " + remote);
+                Log.info("connected to: {}", remote);
             }
         } else if (current.equals(SessionState.Order.HANDSHAKING)) {
             // start handshake
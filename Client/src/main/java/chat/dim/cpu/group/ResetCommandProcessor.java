@@ -144,7 +144,7 @@ public class ResetCommandProcessor extends GroupCommandProcessor {
         } else if (addList.isEmpty() && removeList.isEmpty()) {
             Log.warning("nothing changed");
         } else if (saveMembers(newMembers, group)) {
-            Log.info("new members saved in group: " + group);
+            Log.info("new members saved in group: {}", group);
             if (addList.size() > 0) {
                 command.put("added", ID.revert(addList));
             }
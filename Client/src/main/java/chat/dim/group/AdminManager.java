@@ -112,7 +112,7 @@ public class AdminManager extends TripletsHelper {
             assert false : "failed to save document for group: " + group;
             return false;
         } else {
-            Log.info("group document updated: " + group);
+            Log.info("group document updated: {}", group);
         }
 
         //
@@ -157,7 +157,7 @@ public class AdminManager extends TripletsHelper {
         }
         for (ID item : members) {
             if (me.equals(item)) {
-                Log.info("skip cycled message: " + item + ", " + group);
+                Log.info("skip cycled message: {}, {}", item, group);
                 continue;
             }
             messenger.sendContent(command, me, item, 1);
@@ -148,7 +148,7 @@ public class GroupEmitter extends TripletsHelper {
             // it is a tiny group, split this message before encrypting and signing,
             // then send this group message to all members one by one
             int success = splitAndSendMessage(allMembers, group, iMsg, priority);
-            Log.info("split " + success + " message(s) for group: " + group);
+            Log.info("split {} message(s) for group: {}", success, group);
             return null;
         } else {
             // encrypt and sign this message first,
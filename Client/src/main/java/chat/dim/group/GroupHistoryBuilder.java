@@ -116,7 +116,7 @@ public class GroupHistoryBuilder extends TripletsHelper {
             if (item.first instanceof ResetCommand) {
                 // 'reset' command already add to the front
                 // assert messages.size() == 2 : "group history error: " + group + ", " + history.size();
-                Log.info("skip 'reset' command for group: " + group);
+                Log.info("skip 'reset' command for group: {}", group);
                 continue;
             } else if (item.first instanceof ResignCommand) {
                 // 'resign' command, comparing it with document time
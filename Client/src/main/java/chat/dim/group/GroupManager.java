@@ -121,7 +121,7 @@ public class GroupManager extends TripletsHelper {
         //
         Register register = new Register(getDatabase());
         ID group = register.createGroup(founder, groupName);
-        Log.info("new group: " + group + " (" + groupName + "), founder: " + founder);
+        Log.info("new group: {} ({}), founder: {}", group, groupName, founder);
 
         //
         //  3. upload meta+document to neighbor station(s)
@@ -145,7 +145,7 @@ public class GroupManager extends TripletsHelper {
         //  4. create & broadcast 'reset' group command with new members
         //
         if (resetMembers(members, group)) {
-            Log.info("created group " + group + " with " + members.size() + " members");
+            Log.info("created group {} with {} members", group, members.size());
         } else {
             Log.error("failed to create group " + group + " with " + members.size() + " members");
         }
@@ -234,7 +234,7 @@ public class GroupManager extends TripletsHelper {
             assert false : "failed to update members of group: " + group;
             return false;
         } else {
-            Log.info("group members updated: " + group + ", " + newMembers.size());
+            Log.info("group members updated: {}, {}", group, newMembers.size());
         }
 
         //
@@ -414,7 +414,7 @@ public class GroupManager extends TripletsHelper {
         CommonMessenger messenger = getMessenger();
         for (ID receiver : members) {
             if (me.equals(receiver)) {
-                Log.info("skip cycled message: " + me + " => " + receiver);
+                Log.info("skip cycled message: {} => {}", me, receiver);
                 continue;
             }
             messenger.sendContent(content, me, receiver, 1);
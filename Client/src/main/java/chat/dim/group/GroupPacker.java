@@ -86,10 +86,10 @@ public class GroupPacker extends TripletsHelper {
         InstantMessage item;
         for (ID receiver : allMembers) {
             if (sender.equals(receiver)) {
-                Log.info("skip cycled message: " + receiver + ", " + iMsg.getGroup());
+                Log.info("skip cycled message: {}, {}", receiver, iMsg.getGroup());
                 continue;
             } else {
-                Log.info("split group message for member: " + receiver);
+                Log.info("split group message for member: {}", receiver);
             }
             info = iMsg.copyMap(false);
             // Copy the content to avoid conflicts caused by modifications
@@ -125,10 +125,10 @@ public class GroupPacker extends TripletsHelper {
         ReliableMessage item;
         for (ID receiver : allMembers) {
             if (sender.equals(receiver)) {
-                Log.info("skip cycled message: " + receiver + ", " + rMsg.getGroup());
+                Log.info("skip cycled message: {}, {}", receiver, rMsg.getGroup());
                 continue;
             } else {
-                Log.info("split group message for member: " + receiver);
+                Log.info("split group message for member: {}", receiver);
             }
             info = rMsg.copyMap(false);
             // replace 'receiver' with member ID
@@ -38,6 +38,7 @@ import java.util.Date;
 import java.util.List;
 
 import chat.dim.Messenger;
+import chat.dim.daemon.Daemons;
 import chat.dim.dbi.SessionDBI;
 import chat.dim.log.Log;
 import chat.dim.mkm.Station;
@@ -47,6 +48,7 @@ import chat.dim.port.Arrival;
 import chat.dim.port.Porter;
 import chat.dim.tcp.StreamHub;
 import chat.dim.threading.BackgroundThreads;
+import chat.dim.type.Pair;
 import chat.dim.utils.ArrayUtils;
 
 /**
@@ -147,8 +149,7 @@ public class ClientSession extends BaseSession {
 
     public void start(SessionState.Delegate delegate) {
         stop();
-        Thread thr = new Thread(this);
-        thr.setDaemon(true);
+        Thread thr = Daemons.newThread(this);
         thr.start();
         thread = thr;
 
@@ -224,41 +225,57 @@ public class ClientSession extends BaseSession {
         } else if (current.equals(Porter.Status.READY)) {
             // connected/ reconnected
             setActive(true, null);
+            // send the queued messages
+            wakeup();
         }
     }
 
     @Override
     public void onPorterReceived(Arrival ship, Porter docker) {
-        //super.onPorterReceived(ship, docker);
-        List<byte[]> allResponses = new ArrayList<>();
+        List<Arrival> ships = new ArrayList<>();
+        ships.add(ship);
+        onPorterReceived(ships, docker);
+    }
+
+    @Override
+    public void onPorterReceived(List<Arrival> ships, Porter docker) {
+        //super.onPorterReceived(ships, docker);
+        List<Pair<Arrival, byte[]>> allResponses = new ArrayList<>();
         Messenger messenger = getMessenger();
-        // 1. get data packages from arrival ship's payload
-        List<byte[]> packages = getDataPackages(ship);
+        List<byte[]> packages;
         List<byte[]> responses;
-        for (byte[] pack : packages) {
-            try {
-                // 2. process each data package
-                responses = messenger.processPackage(pack);
-                if (responses == null) {
-                    continue;
-                }
-                for (byte[] res : responses) {
-                    if (res == null || res.length == 0) {
-                        // should not happen
+        for (Arrival ship : ships) {
+            // 1. get data packages from arrival ship's payload
+            packages = getDataPackages(ship);
+            if (ship instanceof StreamArrival) {
+                // payload copied, the receive buffer can be reused now
+                ((StreamArrival) ship).release();
+            }
+            for (byte[] pack : packages) {
+                try {
+                    // 2. process each data package
+                    responses = messenger.processPackage(pack);
+                    if (responses == null) {
                         continue;
                     }
-                    allResponses.add(res);
+                    for (byte[] res : responses) {
+                        if (res == null || res.length == 0) {
+                            // should not happen
+                            continue;
+                        }
+                        allResponses.add(new Pair<>(ship, res));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
         }
         CommonGate gate = getGate();
         SocketAddress source = docker.getRemoteAddress();
         SocketAddress destination = docker.getLocalAddress();
         // 3. send responses separately
-        for (byte[] res : allResponses) {
-            gate.sendResponse(res, ship, source, destination);
+        for (Pair<Arrival, byte[]> item : allResponses) {
+            gate.sendResponse(item.second, item.first, source, destination);
         }
     }
 
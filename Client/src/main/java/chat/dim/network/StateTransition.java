@@ -312,7 +312,7 @@ public abstract class StateTransition extends BaseTransition<StateMachine> {
                 @Override
                 public boolean evaluate(StateMachine ctx, Date now) {
                     Porter.Status status = ctx.getStatus();
-                    Log.debug("docker status: " + status);
+                    Log.debug("docker status: {}", status);
                     return !status.equals(Porter.Status.ERROR);
                 }
             };
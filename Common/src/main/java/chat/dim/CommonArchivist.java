@@ -162,7 +162,7 @@ public class CommonArchivist implements Archivist, Barrack {
         assert facebook != null : "facebook lost";
         Meta old = facebook.getMeta(identifier);
         if (old != null) {
-            Log.debug("meta duplicated: " + identifier);
+            Log.debug("meta duplicated: {}", identifier);
             return true;
         }
         //
@@ -190,7 +190,7 @@ public class CommonArchivist implements Archivist, Barrack {
         //  2. check expired
         //
         if (checkDocumentExpired(doc, did)) {
-            Log.info("drop expired document: " + did);
+            Log.info("drop expired document: {}", did);
             return false;
         }
         //
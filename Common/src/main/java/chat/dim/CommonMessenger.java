@@ -238,12 +238,14 @@ public class CommonMessenger extends Messenger implements Transmitter {
         //  0. check cycled message
         //
         if (iMsg.getReceiver().equals(sender)) {
-            Log.warning("drop cycled message: " + iMsg.getContent() + " "
-                    + sender + " => " + iMsg.getReceiver() + ", " + iMsg.getGroup());
+            Log.warning("drop cycled message: {} {} => {}, {}",
+                    iMsg.getContent(), sender, iMsg.getReceiver(), iMsg.getGroup());
             return null;
         } else {
-            Log.debug("send instant message (type=" + iMsg.getContent().getType() + "): "
-                    + sender + " => " + iMsg.getReceiver() + ", " + iMsg.getGroup());
+            if (Log.isDebugEnabled()) {
+                Log.debug("send instant message (type={}): {} => {}, {}",
+                        iMsg.getContent().getType(), sender, iMsg.getReceiver(), iMsg.getGroup());
+            }
             // attach sender's document times
             // for the receiver to check whether user info synchronized
             boolean ok = attachVisaTime(sender, iMsg);
@@ -279,8 +281,8 @@ public class CommonMessenger extends Messenger implements Transmitter {
     public boolean sendReliableMessage(ReliableMessage rMsg, int priority) {
         // 0. check cycled message
         if (rMsg.getSender().equals(rMsg.getReceiver())) {
-            Log.warning("drop cycled message: "
-                    + rMsg.getSender() + " => " + rMsg.getReceiver() + ", " + rMsg.getGroup());
+            Log.warning("drop cycled message: {} => {}, {}",
+                    rMsg.getSender(), rMsg.getReceiver(), rMsg.getGroup());
             return false;
         }
         // 1. serialize message
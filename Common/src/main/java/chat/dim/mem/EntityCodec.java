@@ -0,0 +1,87 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import chat.dim.format.JSON;
+import chat.dim.format.UTF8;
+import chat.dim.protocol.Document;
+import chat.dim.protocol.Meta;
+
+/**
+ *  Serialize cached entities to JsON for the off-heap tier
+ */
+public final class EntityCodec {
+
+    public static final OffHeapTier.Codec<Meta> META = new OffHeapTier.Codec<Meta>() {
+
+        @Override
+        public byte[] encode(Meta meta) {
+            return UTF8.encode(JSON.encode(meta.toMap()));
+        }
+
+        @Override
+        public Meta decode(byte[] data) {
+            return Meta.parse(JSON.decode(UTF8.decode(data)));
+        }
+    };
+
+    public static final OffHeapTier.Codec<List<Document>> DOCUMENTS = new OffHeapTier.Codec<List<Document>>() {
+
+        @Override
+        public byte[] encode(List<Document> documents) {
+            List<Object> array = new ArrayList<>();
+            for (Document doc : documents) {
+                array.add(doc.toMap());
+            }
+            return UTF8.encode(JSON.encode(array));
+        }
+
+        @Override
+        public List<Document> decode(byte[] data) {
+            Object array = JSON.decode(UTF8.decode(data));
+            if (!(array instanceof List)) {
+                return null;
+            }
+            List<Document> documents = new ArrayList<>();
+            Document doc;
+            for (Object item : (List<?>) array) {
+                doc = Document.parse(item);
+                if (doc != null) {
+                    documents.add(doc);
+                }
+            }
+            return documents;
+        }
+    };
+}
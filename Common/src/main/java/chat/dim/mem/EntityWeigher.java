@@ -0,0 +1,76 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ *  Estimate the serialized (JsON) size of cached entities,
+ *  such as Meta, Document, or list of them
+ */
+public final class EntityWeigher implements CachePool.Weigher<Object, Object> {
+
+    public static final EntityWeigher INSTANCE = new EntityWeigher();
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long size = estimate(value, 0);
+        return size < Integer.MAX_VALUE ? (int) size : Integer.MAX_VALUE;
+    }
+
+    private static long estimate(Object value, int depth) {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof String) {
+            return ((String) value).length() + 2;
+        } else if (depth > 8) {
+            // too deep, should not happen
+            return 16;
+        }
+        long size = 2;
+        if (value instanceof Map) {
+            // Meta, Document
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += estimate(entry.getKey(), depth + 1) + 1;
+                size += estimate(entry.getValue(), depth + 1) + 1;
+            }
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                size += estimate(item, depth + 1) + 1;
+            }
+        } else {
+            // number, boolean
+            size = 8;
+        }
+        return size;
+    }
+}
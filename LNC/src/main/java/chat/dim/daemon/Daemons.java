@@ -0,0 +1,111 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.daemon;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *  Threads for background loops
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Platform daemon threads by default; an application running on Java 21+
+ *  can call 'useVirtualThreads()' at startup (before starting any session)
+ *  to run all the loops on virtual threads instead.
+ */
+public final class Daemons {
+
+    private static volatile ThreadFactory factory = new PlatformFactory();
+
+    public static ThreadFactory getThreadFactory() {
+        return factory;
+    }
+
+    /**
+     *  Set factory for creating threads of background loops
+     *
+     * @param threadFactory - null to reset to platform threads
+     */
+    public static void setThreadFactory(ThreadFactory threadFactory) {
+        factory = threadFactory == null ? new PlatformFactory() : threadFactory;
+    }
+
+    /**
+     *  Create a thread (not started) for the background loop
+     *
+     * @param runnable - loop
+     * @return daemon thread
+     */
+    public static Thread newThread(Runnable runnable) {
+        return factory.newThread(runnable);
+    }
+
+    /**
+     *  Run background loops on virtual threads
+     *
+     * @return false when virtual thread not supported
+     */
+    public static boolean useVirtualThreads() {
+        ThreadFactory virtualFactory = createVirtualFactory();
+        if (virtualFactory == null) {
+            return false;
+        }
+        factory = virtualFactory;
+        return true;
+    }
+
+    // Thread.ofVirtual().factory()
+    private static ThreadFactory createVirtualFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method factoryMethod = builderClass.getMethod("factory");
+            return (ThreadFactory) factoryMethod.invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            // Java 8 ~ 20
+            return null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static final class PlatformFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import chat.dim.daemon.Daemons;
+
+/**
+ *  Asynchronous Logger
+ *  ~~~~~~~~~~~~~~~~~~~
+ *
+ *  Log events are handed off through a bounded ring buffer, and formatted
+ *  and printed by a background thread, so the calling threads never wait
+ *  for the stdout; when the buffer is full, the events will be dropped or
+ *  the callers will wait, by the overflow policy.
+ *
+ *  Usage:
+ *      AsyncLogger logger = new AsyncLogger();
+ *      logger.start();
+ *      Log.logger = logger;
+ *
+ *  Logs are printed directly before started and after stopped.
+ */
+public class AsyncLogger extends DefaultLogger implements Runnable {
+
+    public static int BUFFER_SIZE = 8192;
+    public static Overflow OVERFLOW = Overflow.DROP;
+
+    private final Overflow overflow;
+
+    // ring buffer, slot sequence:
+    //      == position     - empty, waiting for writing
+    //      == position + 1 - written, waiting for reading
+    private final Event[] ring;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(0);  // next position for writing
+    private long head = 0;                              // next position for reading
+
+    private final AtomicBoolean sleeping = new AtomicBoolean(false);
+    private volatile boolean running = false;
+    private volatile Thread thread = null;
+
+    private final LongAdder dropped = new LongAdder();
+
+    public AsyncLogger(LogPrinter logPrinter, int bufferSize, Overflow policy) {
+        super(logPrinter);
+        overflow = policy;
+        int capacity = 2;
+        while (capacity < bufferSize) {
+            capacity <<= 1;
+        }
+        ring = new Event[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int index = 0; index < capacity; ++index) {
+            ring[index] = new Event();
+            sequences.set(index, index);
+        }
+        mask = capacity - 1;
+    }
+
+    public AsyncLogger() {
+        this(new LogPrinter(), BUFFER_SIZE, OVERFLOW);
+    }
+
+    public void start() {
+        forceStop();
+        running = true;
+        Thread thr = Daemons.newThread(this);
+        thread = thr;
+        thr.start();
+    }
+
+    private void forceStop() {
+        running = false;
+        Thread thr = thread;
+        if (thr != null) {
+            // waiting for flushing the remaining logs
+            thread = null;
+            LockSupport.unpark(thr);
+            try {
+                thr.join(2000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void stop() {
+        forceStop();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     *  Get count of logs dropped for buffer full
+     *
+     * @return dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    protected void output(String msg, String tag) {
+        // trace caller only when it's shown
+        LogCaller locate = Log.showCaller || Log.showMethod ? caller() : null;
+        long time = System.currentTimeMillis();
+        if (!running) {
+            // not started yet, print directly
+            print(msg, tag, time, locate);
+            return;
+        }
+        while (!offer(msg, tag, time, locate)) {
+            if (overflow == Overflow.DROP || !running) {
+                dropped.increment();
+                return;
+            }
+            // buffer full, wait for the printer
+            wakeup();
+            LockSupport.parkNanos(100 * 1000);
+        }
+        if (sleeping.get()) {
+            wakeup();
+        }
+    }
+
+    private void wakeup() {
+        if (sleeping.compareAndSet(true, false)) {
+            Thread thr = thread;
+            if (thr != null) {
+                LockSupport.unpark(thr);
+            }
+        }
+    }
+
+    private boolean offer(String msg, String tag, long time, LogCaller locate) {
+        long pos = tail.get();
+        int index;
+        long seq;
+        while (true) {
+            index = (int) (pos & mask);
+            seq = sequences.get(index);
+            if (seq == pos) {
+                // slot empty, try to take it
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (seq < pos) {
+                // buffer full
+                return false;
+            }
+            // taken by another thread, try next
+            pos = tail.get();
+        }
+        Event event = ring[index];
+        event.msg = msg;
+        event.tag = tag;
+        event.time = time;
+        event.caller = locate;
+        // publish to the printer (full fence before checking 'sleeping')
+        sequences.set(index, pos + 1);
+        return true;
+    }
+
+    // print next log event, return false on buffer empty
+    private boolean poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            // not written yet
+            return false;
+        }
+        Event event = ring[index];
+        String msg = event.msg;
+        String tag = event.tag;
+        long time = event.time;
+        LogCaller locate = event.caller;
+        event.msg = null;
+        event.tag = null;
+        event.caller = null;
+        // release the slot for next round
+        sequences.lazySet(index, head + mask + 1);
+        ++head;
+        try {
+            print(msg, tag, time, locate);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            if (poll()) {
+                continue;
+            } else if (!running) {
+                // stopped, and all logs printed
+                break;
+            }
+            // nothing to do now, have a rest ^_^
+            sleeping.set(true);
+            if (sequences.get((int) (head & mask)) != head + 1 && running) {
+                // check again before parking, for the log
+                // appended before the flag set
+                LockSupport.park(this);
+            }
+            sleeping.set(false);
+        }
+    }
+
+    /**
+     *  Policy when the buffer is full
+     */
+    public enum Overflow {
+        DROP,   // drop the new log, count it
+        BLOCK,  // wait until the printer takes some
+    }
+
+    private static final class Event {
+        String msg;
+        String tag;
+        long time;
+        LogCaller caller;
+    }
+}
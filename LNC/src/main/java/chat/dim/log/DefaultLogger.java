@@ -48,15 +48,36 @@ public class DefaultLogger implements Logger {
         this(new LogPrinter());
     }
 
+    // last formatted time, reused within the same second
+    private volatile Timestamp lastTime = null;
+
     protected String now() {
-        Date now = new Date();
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.CHINA);
-        return formatter.format(now);
+        return format(System.currentTimeMillis());
+    }
+
+    protected String format(long millis) {
+        long second = millis / 1000;
+        Timestamp timestamp = lastTime;
+        if (timestamp == null || timestamp.second != second) {
+            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.CHINA);
+            timestamp = new Timestamp(second, formatter.format(new Date(second * 1000)));
+            lastTime = timestamp;
+        }
+        return timestamp.text;
+    }
+
+    private static final class Timestamp {
+        final long second;
+        final String text;
+        Timestamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
     }
 
     protected LogCaller caller() {
         // Override for customized caller tracer
-        return new LogCaller("Log.java", Thread.currentThread().getStackTrace());
+        return new LogCaller("Log.java", StackTracer.capture());
     }
 
     public static String shorten(String text, int maxLen) {
@@ -76,6 +97,20 @@ public class DefaultLogger implements Logger {
     }
 
     protected void output(String msg, String tag) {
+        // trace caller only when it's shown
+        LogCaller locate = Log.showCaller || Log.showMethod ? caller() : null;
+        print(msg, tag, System.currentTimeMillis(), locate);
+    }
+
+    /**
+     *  Build log line and print it
+     *
+     * @param msg    - log message
+     * @param tag    - level tag
+     * @param time   - log time
+     * @param locate - caller, null when caller & method not shown
+     */
+    protected void print(String msg, String tag, long time, LogCaller locate) {
         //
         //  1. shorten message
         //
@@ -88,12 +123,11 @@ public class DefaultLogger implements Logger {
         //
         String body;
         //  2.1. insert caller & method
-        LogCaller locate = caller();
         String method = null;
-        if (Log.showMethod) {
+        if (Log.showMethod && locate != null) {
             method = locate.getMethodName();
         }
-        if (Log.showCaller) {
+        if (Log.showCaller && locate != null) {
             if (method == null) {
                 body = locate + " >\t" + msg;
             } else {
@@ -108,7 +142,7 @@ public class DefaultLogger implements Logger {
         }
         //  2.2. insert time
         if (Log.showTime) {
-            body = "[" + now() + "] " + tag + " | " + body;
+            body = "[" + format(time) + "] " + tag + " | " + body;
         } else {
             body = tag + " | " + body;
         }
@@ -30,6 +30,8 @@
  */
 package chat.dim.log;
 
+import java.util.function.Supplier;
+
 public final class Log {
 
     public static final int DEBUG_FLAG   = 1;
@@ -51,19 +53,169 @@ public final class Log {
 
     public static Logger logger = new DefaultLogger();
 
+    public static boolean isDebugEnabled() {
+        return (level & DEBUG_FLAG) != 0;
+    }
+
+    public static boolean isInfoEnabled() {
+        return (level & INFO_FLAG) != 0;
+    }
+
+    public static boolean isWarningEnabled() {
+        return (level & WARNING_FLAG) != 0;
+    }
+
+    public static boolean isErrorEnabled() {
+        return (level & ERROR_FLAG) != 0;
+    }
+
+    //
+    //  Debug
+    //
+
     public static void debug(String msg) {
         logger.debug(msg);
     }
 
+    public static void debug(String format, Object arg) {
+        if (isDebugEnabled()) {
+            logger.debug(format(format, arg));
+        }
+    }
+
+    public static void debug(String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            logger.debug(format(format, arg1, arg2));
+        }
+    }
+
+    public static void debug(String format, Object... args) {
+        if (isDebugEnabled()) {
+            logger.debug(format(format, args));
+        }
+    }
+
+    public static void debug(Supplier<String> supplier) {
+        if (isDebugEnabled()) {
+            logger.debug(supplier.get());
+        }
+    }
+
+    //
+    //  Info
+    //
+
     public static void info(String msg) {
         logger.info(msg);
     }
 
+    public static void info(String format, Object arg) {
+        if (isInfoEnabled()) {
+            logger.info(format(format, arg));
+        }
+    }
+
+    public static void info(String format, Object arg1, Object arg2) {
+        if (isInfoEnabled()) {
+            logger.info(format(format, arg1, arg2));
+        }
+    }
+
+    public static void info(String format, Object... args) {
+        if (isInfoEnabled()) {
+            logger.info(format(format, args));
+        }
+    }
+
+    public static void info(Supplier<String> supplier) {
+        if (isInfoEnabled()) {
+            logger.info(supplier.get());
+        }
+    }
+
+    //
+    //  Warning
+    //
+
     public static void warning(String msg) {
         logger.warning(msg);
     }
 
+    public static void warning(String format, Object arg) {
+        if (isWarningEnabled()) {
+            logger.warning(format(format, arg));
+        }
+    }
+
+    public static void warning(String format, Object arg1, Object arg2) {
+        if (isWarningEnabled()) {
+            logger.warning(format(format, arg1, arg2));
+        }
+    }
+
+    public static void warning(String format, Object... args) {
+        if (isWarningEnabled()) {
+            logger.warning(format(format, args));
+        }
+    }
+
+    public static void warning(Supplier<String> supplier) {
+        if (isWarningEnabled()) {
+            logger.warning(supplier.get());
+        }
+    }
+
+    //
+    //  Error
+    //
+
     public static void error(String msg) {
         logger.error(msg);
     }
+
+    public static void error(String format, Object arg) {
+        if (isErrorEnabled()) {
+            logger.error(format(format, arg));
+        }
+    }
+
+    public static void error(String format, Object arg1, Object arg2) {
+        if (isErrorEnabled()) {
+            logger.error(format(format, arg1, arg2));
+        }
+    }
+
+    public static void error(String format, Object... args) {
+        if (isErrorEnabled()) {
+            logger.error(format(format, args));
+        }
+    }
+
+    public static void error(Supplier<String> supplier) {
+        if (isErrorEnabled()) {
+            logger.error(supplier.get());
+        }
+    }
+
+    /**
+     *  Replace each '{}' in the template with the next argument
+     *
+     * @param format - template, e.g.: "send message: {} => {}"
+     * @param args   - arguments
+     * @return log message
+     */
+    public static String format(String format, Object... args) {
+        StringBuilder sb = new StringBuilder(format.length() + 16 * args.length);
+        int start = 0, pos;
+        for (Object item : args) {
+            pos = format.indexOf("{}", start);
+            if (pos < 0) {
+                break;
+            }
+            sb.append(format, start, pos).append(item);
+            start = pos + 2;
+        }
+        sb.append(format, start, format.length());
+        return sb.toString();
+    }
 }
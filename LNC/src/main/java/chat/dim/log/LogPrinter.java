@@ -62,6 +62,8 @@ public class LogPrinter {
 
     /**
      *  Override for redirecting outputs
+     *
+     *  NOTICE: caller is null when neither caller nor method is shown
      */
     protected void println(String x, String tag, LogCaller caller) {
         System.out.println(x);
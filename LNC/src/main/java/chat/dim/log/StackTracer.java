@@ -0,0 +1,94 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.log;
+
+import java.lang.reflect.Method;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ *  Capture the top frames of current thread,
+ *  by StackWalker (Java 9+) to avoid walking the whole stack
+ */
+final class StackTracer {
+
+    static int MAX_DEPTH = 16;
+
+    private static final Object walker;
+    private static final Method walkMethod;
+    private static final Method toElementMethod;
+
+    static {
+        Object instance = null;
+        Method walk = null;
+        Method toElement = null;
+        try {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            instance = walkerClass.getMethod("getInstance").invoke(null);
+            walk = walkerClass.getMethod("walk", Function.class);
+            toElement = frameClass.getMethod("toStackTraceElement");
+        } catch (ClassNotFoundException e) {
+            // Java 8
+            instance = null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            instance = null;
+        }
+        walker = instance;
+        walkMethod = walk;
+        toElementMethod = toElement;
+    }
+
+    static StackTraceElement[] capture() {
+        if (walker != null) {
+            try {
+                return (StackTraceElement[]) walkMethod.invoke(walker, WALK);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return Thread.currentThread().getStackTrace();
+    }
+
+    private static final Function<Stream<?>, StackTraceElement[]> WALK = frames -> frames
+            .limit(MAX_DEPTH)
+            .map(StackTracer::toElement)
+            .toArray(StackTraceElement[]::new);
+
+    private static StackTraceElement toElement(Object frame) {
+        try {
+            return (StackTraceElement) toElementMethod.invoke(frame);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -32,11 +32,11 @@ package chat.dim.mem;
 
 public class CacheHolder <V> {
 
-    private V value;
+    private volatile V value;
 
     private final long lifeSpan;
-    private long expired;     // time to expired
-    private long deprecated;  // time to deprecated
+    private volatile long expired;     // time to expired
+    private volatile long deprecated;  // time to deprecated
 
     public CacheHolder(V cacheValue, long cacheLifeSpan, long now) {
         super();
@@ -46,7 +46,7 @@ public class CacheHolder <V> {
             now = System.currentTimeMillis();
         }
         expired = now + lifeSpan;
-        deprecated = now + lifeSpan << 1;
+        deprecated = now + (lifeSpan << 1);
     }
 
     public V getValue() {
@@ -59,7 +59,7 @@ public class CacheHolder <V> {
             now = System.currentTimeMillis();
         }
         expired = now + lifeSpan;
-        deprecated = now + lifeSpan << 1;
+        deprecated = now + (lifeSpan << 1);
     }
 
     public boolean isAlive(long now) {
@@ -69,6 +69,20 @@ public class CacheHolder <V> {
         return now < expired;
     }
 
+    /**
+     *  Check whether the value is going to be expired
+     *
+     * @param ahead - ratio of the life span
+     * @param now   - current time
+     * @return true on remaining life less than 'lifeSpan * ahead'
+     */
+    public boolean isExpiring(double ahead, long now) {
+        if (now <= 0) {
+            now = System.currentTimeMillis();
+        }
+        return now >= expired - (long) (lifeSpan * ahead);
+    }
+
     public boolean isDeprecated(long now) {
         if (now <= 0) {
             now = System.currentTimeMillis();
@@ -76,6 +90,14 @@ public class CacheHolder <V> {
         return now > deprecated;
     }
 
+    long getExpiredTime() {
+        return expired;
+    }
+
+    long getDeprecatedTime() {
+        return deprecated;
+    }
+
     public void renewal(long duration, long now) {
         if (duration <= 0) {
             duration = 128 * 1000;
@@ -84,6 +106,6 @@ public class CacheHolder <V> {
             now = System.currentTimeMillis();
         }
         expired = now + duration;
-        deprecated = now + lifeSpan << 1;
+        deprecated = now + (lifeSpan << 1);
     }
 }
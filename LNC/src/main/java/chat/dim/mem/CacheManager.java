@@ -32,8 +32,9 @@ package chat.dim.mem;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import chat.dim.daemon.Daemons;
 import chat.dim.log.Log;
 
 public enum CacheManager implements Runnable {
@@ -44,7 +45,14 @@ public enum CacheManager implements Runnable {
         return INSTANCE;
     }
 
-    private final Map<String, CachePool> poolMap = new HashMap<>();
+    /**
+     *  Purge cadence, and the max entries checked for each pool in one round;
+     *  if any pool has more entries due, the next round starts right away.
+     */
+    public static long PURGE_INTERVAL = 2 * 1000;  // 2 seconds
+    public static int PURGE_LIMIT = 4096;
+
+    private final Map<String, CachePool<?, ?>> poolMap = new ConcurrentHashMap<>();
 
     // thread for cleaning caches
     private Thread thread;
@@ -58,8 +66,7 @@ public enum CacheManager implements Runnable {
     public void start() {
         forceStop();
         running = true;
-        Thread thr = new Thread(this);
-        thr.setDaemon(true);
+        Thread thr = Daemons.newThread(this);
         thr.start();
         thread = thr;
     }
@@ -90,14 +97,16 @@ public enum CacheManager implements Runnable {
         while (running) {
             now = System.currentTimeMillis();
             if (now < nextTime) {
-                idle(2048);
+                idle(Math.min(nextTime - now, 2048));
                 continue;
             } else {
-                nextTime = now + 300 * 1000;
+                nextTime = now + PURGE_INTERVAL;
             }
             try {
-                int count = purge(now);
-                Log.info("[MEM] purge " + count + " item(s) from cache pools");
+                if (purge(now, PURGE_LIMIT)) {
+                    // too many entries due, continue soon
+                    nextTime = now;
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -116,19 +125,51 @@ public enum CacheManager implements Runnable {
     /**
      *  Purge all pools
      *
-     * @param now - current time
+     * @param now   - current time
+     * @param limit - max entries visited for each pool
+     * @return true on some pool has more entries due
      */
-    private int purge(long now) {
+    private boolean purge(long now, int limit) {
+        boolean busy = false;
         int count = 0;
-        Set<String> names = poolMap.keySet();
-        CachePool<?, ?> pool;
-        for (String key : names) {
-            pool = poolMap.get(key);
-            if (pool != null) {
-                count += pool.purge(now);
+        for (CachePool<?, ?> pool : poolMap.values()) {
+            // purge pools one by one
+            count += pool.purge(now, limit);
+            if (pool.hasDue(now)) {
+                // stopped by the limit
+                busy = true;
             }
         }
-        return count;
+        if (count > 0) {
+            Log.debug("[MEM] purge " + count + " item(s) from cache pools");
+        }
+        return busy;
+    }
+
+    /**
+     *  Get stats of all pools
+     *
+     * @return pool name => stats info
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> info = new HashMap<>();
+        for (Map.Entry<String, CachePool<?, ?>> entry : poolMap.entrySet()) {
+            info.put(entry.getKey(), entry.getValue().getStats().toMap());
+        }
+        return info;
+    }
+
+    private volatile boolean exportingMBeans = false;
+
+    /**
+     *  Export stats of all pools (and the pools created later) via JMX,
+     *  as 'chat.dim.mem:type=CachePool,name="..."'
+     */
+    public void registerMBeans() {
+        exportingMBeans = true;
+        for (Map.Entry<String, CachePool<?, ?>> entry : poolMap.entrySet()) {
+            CacheMBeans.register(entry.getKey(), entry.getValue().getStats());
+        }
     }
 
     /**
@@ -139,13 +180,24 @@ public enum CacheManager implements Runnable {
      * @param <V>  - value type
      * @return CachePool
      */
-    @SuppressWarnings("unchecked")
     public <K, V> CachePool<K, V> getPool(String name) {
-        CachePool<K, V> pool = poolMap.get(name);
+        CachePool<?, ?> pool = poolMap.get(name);
         if (pool == null) {
-            pool = new CachePool<>();
-            poolMap.put(name, pool);
+            pool = new CachePool<K, V>();
+            CachePool<?, ?> old = poolMap.putIfAbsent(name, pool);
+            if (old != null) {
+                // created by another thread
+                pool = old;
+            } else if (exportingMBeans) {
+                CacheMBeans.register(name, pool.getStats());
+            }
         }
-        return pool;
+        return cast(pool);
+    }
+
+    // pools are created by name, the caller must know the types
+    @SuppressWarnings("unchecked")
+    private static <K, V> CachePool<K, V> cast(CachePool<?, ?> pool) {
+        return (CachePool<K, V>) pool;
     }
 }
@@ -33,10 +33,106 @@ package chat.dim.mem;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import chat.dim.daemon.Daemons;
+
+/**
+ *  Cache Pool
+ *  ~~~~~~~~~~
+ *
+ *  Thread-safe, readers never block,
+ *  and the purging won't stop the others from reading/updating.
+ *
+ *  Unbounded by default, call 'setCapacity()' to limit the entries count
+ *  or the total weight; entries will be evicted by segmented LRU then,
+ *  besides expiring by time. The evicted entries can be demoted to a
+ *  second tier (e.g. off-heap), and promoted back when missed in memory.
+ *
+ *  Expired entries are indexed by time slots, so purging only touches
+ *  the entries due, and it can be done in small steps.
+ *
+ *  Use 'get(key, loader, lifeSpan, negativeSpan)' to load missed entries,
+ *  concurrent callers missing the same key will share one loading; a value
+ *  loaded won't take place of the one updated during the loading.
+ *
+ *  Pin the key while its new value is being written to the storage behind
+ *  (e.g. write-behind queue), so it won't be evicted or expired, and the
+ *  loading will wait until unpinned, instead of reading the stale record.
+ */
 public class CachePool <K, V> {
 
-    private final Map<K, CacheHolder<V>> holderMap = new HashMap<>();
+    private final ConcurrentHashMap<K, CacheHolder<V>> holderMap = new ConcurrentHashMap<>();
+
+    private volatile SegmentedLRU<K, V> lru = null;
+
+    private final ExpiryWheel<K> wheel = new ExpiryWheel<>();
+
+    private volatile Tier<K, V> tier = null;
+
+    private final CacheStats stats = new CacheStats(this);
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     *  Limit the total weight of entries
+     *
+     * @param maxWeight - 0 means unbounded
+     * @param weigher   - weight calculator, null means 1 for each entry
+     */
+    public void setCapacity(long maxWeight, Weigher<? super K, ? super V> weigher) {
+        if (maxWeight <= 0) {
+            lru = null;
+            return;
+        }
+        if (weigher == null) {
+            weigher = SINGLETON;
+        }
+        SegmentedLRU<K, V> policy = new SegmentedLRU<>(holderMap, maxWeight, weigher, pins::containsKey);
+        // count the exists entries
+        Map<K, CacheHolder<V>> evicted = new HashMap<>();
+        for (K key : holderMap.keySet()) {
+            policy.onWrite(key, evicted);
+        }
+        lru = policy;
+        onEvicted(evicted);
+    }
+
+    /**
+     *  Limit the count of entries
+     *
+     * @param maxEntries - 0 means unbounded
+     */
+    public void setCapacity(long maxEntries) {
+        setCapacity(maxEntries, null);
+    }
+
+    /**
+     *  Get total weight of entries
+     *
+     * @return -1 for unbounded pool
+     */
+    public long getWeight() {
+        SegmentedLRU<K, V> policy = lru;
+        return policy == null ? -1 : policy.getWeight();
+    }
+
+    /**
+     *  Keep the entries evicted for capacity in the second tier,
+     *  they will be promoted back when missed in memory
+     *
+     * @param store - second tier, null to disable
+     */
+    public void setSecondTier(Tier<K, V> store) {
+        tier = store;
+    }
 
     public Set<K> getKeys() {
         return holderMap.keySet();
@@ -47,47 +143,555 @@ public class CachePool <K, V> {
     }
     public CacheHolder<V> update(K key, CacheHolder<V> holder) {
         holderMap.put(key, holder);
+        onUpdated(key, holder);
         return holder;
     }
 
+    /**
+     *  Update the entry with its old value atomically,
+     *  updates of the same key are serialized
+     *
+     * @param key      - cache key
+     * @param updater  - calculator for the new value
+     * @param lifeSpan - life span for the new value
+     * @return new holder; null on removed
+     */
+    public CacheHolder<V> compute(K key, Updater<? super K, V> updater, long lifeSpan) {
+        CacheHolder<V> holder = holderMap.compute(key, (k, old) -> {
+            V value = updater.update(k, old);
+            return value == null ? null : new CacheHolder<>(value, lifeSpan, 0);
+        });
+        if (holder == null) {
+            onRemoved(key);
+        } else {
+            onUpdated(key, holder);
+        }
+        return holder;
+    }
+
+    private void onUpdated(K key, CacheHolder<V> holder) {
+        wheel.schedule(key, holder.getDeprecatedTime());
+        Tier<K, V> second = tier;
+        if (second != null) {
+            // the new value takes place of the demoted one
+            second.remove(key);
+        }
+        SegmentedLRU<K, V> policy = lru;
+        if (policy != null) {
+            Map<K, CacheHolder<V>> evicted = new HashMap<>();
+            if (policy.onWrite(key, evicted) > 0) {
+                onEvicted(evicted);
+            }
+        }
+    }
+
+    // entries evicted for capacity
+    private void onEvicted(Map<K, CacheHolder<V>> evicted) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        stats.sizeEvictions.add(evicted.size());
+        for (K key : evicted.keySet()) {
+            unschedule(key);
+        }
+        Tier<K, V> second = tier;
+        if (second != null) {
+            demote(second, evicted);
+        }
+    }
+
+    // drop the key from the expiry index, unless it was put back just now
+    private void unschedule(K key) {
+        wheel.unschedule(key);
+        CacheHolder<V> holder = holderMap.get(key);
+        if (holder != null) {
+            wheel.schedule(key, holder.getDeprecatedTime());
+        }
+    }
+
+    private void demote(Tier<K, V> second, Map<K, CacheHolder<V>> evicted) {
+        long now = System.currentTimeMillis();
+        K key;
+        V value;
+        for (Map.Entry<K, CacheHolder<V>> entry : evicted.entrySet()) {
+            key = entry.getKey();
+            value = entry.getValue().getValue();
+            if (value == null || !entry.getValue().isAlive(now)) {
+                // no need to keep 'not found' or expired values
+                continue;
+            }
+            second.demote(key, value, entry.getValue().getExpiredTime());
+            stats.demotions.increment();
+            if (holderMap.containsKey(key)) {
+                // updated by another thread just now
+                second.remove(key);
+            }
+        }
+    }
+
     public CachePair<V> erase(K key, long now) {
         CachePair<V> old = null;
-        if (now > 0) {
-            // get exists value before erasing
-            old = fetch(key, now);
+        CacheHolder<V> holder = holderMap.remove(key);
+        if (holder != null) {
+            stats.removals.increment();
+            if (now > 0) {
+                // return the exists value
+                old = new CachePair<>(holder.isAlive(now) ? holder.getValue() : null, holder);
+            }
         }
-        holderMap.remove(key);
+        onRemoved(key);
         return old;
     }
 
+    private void onRemoved(K key) {
+        unschedule(key);
+        Tier<K, V> second = tier;
+        if (second != null) {
+            second.remove(key);
+        }
+        SegmentedLRU<K, V> policy = lru;
+        if (policy != null) {
+            policy.onRemove(key);
+        }
+    }
+
     public CachePair<V> fetch(K key, long now) {
         CacheHolder<V> holder = holderMap.get(key);
         if (holder == null) {
             // holder not found
+            stats.misses.increment();
             return null;
-        } else if (holder.isAlive(now)) {
-            return new CachePair<>(holder.getValue(), holder);
+        }
+        SegmentedLRU<K, V> policy = lru;
+        if (policy != null) {
+            policy.onRead(key);
+        }
+        if (holder.isAlive(now)) {
+            V value = holder.getValue();
+            if (value == null) {
+                stats.negativeHits.increment();
+            } else {
+                stats.hits.increment();
+            }
+            return new CachePair<>(value, holder);
         } else {
             // holder expired
+            stats.misses.increment();
             return new CachePair<>(null, holder);
         }
     }
 
+    //
+    //  Pinning
+    //
+
+    /**
+     *  Max time for a loading to wait the pinned key
+     */
+    public static long PIN_TIMEOUT = 5000;  // milliseconds
+
+    // key => pending writes
+    private final ConcurrentHashMap<K, Pin> pins = new ConcurrentHashMap<>();
+
+    /**
+     *  Pin the key before writing its new value behind,
+     *  pins of the same key are counted
+     *
+     * @param key - cache key
+     */
+    public void pin(K key) {
+        pins.compute(key, (k, pin) -> {
+            if (pin == null) {
+                pin = new Pin();
+            }
+            ++pin.count;
+            return pin;
+        });
+        // the loading in progress may read the old record
+        Flight<V> flight = flights.get(key);
+        if (flight != null) {
+            flight.dirty = true;
+        }
+    }
+
+    /**
+     *  Unpin the key after the new value written
+     *
+     * @param key - cache key
+     */
+    public void unpin(K key) {
+        pins.computeIfPresent(key, (k, pin) -> {
+            if (--pin.count > 0) {
+                return pin;
+            }
+            pin.latch.countDown();
+            return null;
+        });
+    }
+
+    public boolean isPinned(K key) {
+        return pins.containsKey(key);
+    }
+
+    private void awaitUnpinned(K key) {
+        long deadline = System.currentTimeMillis() + PIN_TIMEOUT;
+        long rest;
+        Pin pin;
+        while ((pin = pins.get(key)) != null) {
+            rest = deadline - System.currentTimeMillis();
+            if (rest <= 0 || !pin.await(rest)) {
+                // timeout, load it anyway
+                break;
+            }
+        }
+    }
+
+    // pending writes for one key
+    private static final class Pin {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private int count = 0;  // modified within the map entry locked
+
+        boolean await(long timeout) {
+            try {
+                return latch.await(timeout, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    //
+    //  Loading
+    //
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    private volatile double refreshAhead = 0;
+    private volatile Executor refresher = null;
+
+    /**
+     *  Reload entries in background before they expired,
+     *  the old values will still be served while reloading
+     *
+     * @param ratio    - reload when remaining life less than 'lifeSpan * ratio'; 0 means never
+     * @param executor - executor for reloading, null means the shared one
+     */
+    public void setRefreshAhead(double ratio, Executor executor) {
+        refresher = executor;
+        refreshAhead = ratio;
+    }
+
+    /**
+     *  Get cached value, or load it when missed/expired;
+     *  only one caller will do the loading for the same key,
+     *  the others will wait for it (or get the stale value if exists).
+     *
+     * @param key          - cache key
+     * @param loader       - value loader (e.g. query from database)
+     * @param lifeSpan     - life span for loaded value
+     * @param negativeSpan - life span for value not found
+     * @return null on not found
+     */
+    public V get(K key, Loader<? super K, ? extends V> loader, long lifeSpan, long negativeSpan) {
+        long now = System.currentTimeMillis();
+        // 1. check memory cache
+        CacheHolder<V> holder = holderMap.get(key);
+        if (holder != null) {
+            SegmentedLRU<K, V> policy = lru;
+            if (policy != null) {
+                policy.onRead(key);
+            }
+            if (holder.isAlive(now)) {
+                double ahead = refreshAhead;
+                if (ahead > 0 && holder.isExpiring(ahead, now)) {
+                    // going to be expired, reload in background
+                    refresh(key, loader, lifeSpan, negativeSpan);
+                }
+                V value = holder.getValue();
+                if (value == null) {
+                    stats.negativeHits.increment();
+                } else {
+                    stats.hits.increment();
+                }
+                return value;
+            } else if (pins.containsKey(key)) {
+                // the value is being written behind, it's still the newest
+                stats.hits.increment();
+                return holder.getValue();
+            }
+        }
+        stats.misses.increment();
+        // 2. cache missed or expired, check loading
+        Flight<V> flight = new Flight<>();
+        Flight<V> running = flights.putIfAbsent(key, flight);
+        if (running == null) {
+            // 3. load it by myself
+            return load(key, flight, loader, lifeSpan, negativeSpan);
+        } else if (holder != null && holder.getValue() != null) {
+            // loading by another thread, serve the stale value
+            return holder.getValue();
+        }
+        // 4. wait for another thread loading
+        return running.await();
+    }
+
+    private V load(K key, Flight<V> flight, Loader<? super K, ? extends V> loader, long lifeSpan, long negativeSpan) {
+        V value = null;
+        RuntimeException error = null;
+        // the storage is stale until the pending writes committed
+        awaitUnpinned(key);
+        CacheHolder<V> before = holderMap.get(key);
+        // check the second tier before loading
+        Tier<K, V> second = tier;
+        CacheHolder<V> holder = second == null ? null : second.promote(key, 0);
+        if (holder != null) {
+            stats.promotions.increment();
+            value = install(key, before, holder, flight);
+            flights.remove(key, flight);
+            flight.complete(value, null);
+            return value;
+        }
+        long start = System.nanoTime();
+        try {
+            value = loader.load(key);
+            holder = new CacheHolder<>(value, value == null ? negativeSpan : lifeSpan, 0);
+            value = install(key, before, holder, flight);
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            stats.recordLoad(System.nanoTime() - start, error == null);
+            flights.remove(key, flight);
+            flight.complete(value, error);
+        }
+        return value;
+    }
+
+    // put the loaded holder, unless the entry was updated during the loading
+    private V install(K key, CacheHolder<V> before, CacheHolder<V> holder, Flight<V> flight) {
+        boolean ok;
+        if (flight.dirty) {
+            // pinned during the loading, the value loaded maybe stale
+            ok = false;
+        } else if (before == null) {
+            ok = holderMap.putIfAbsent(key, holder) == null;
+        } else {
+            ok = holderMap.replace(key, before, holder);
+        }
+        if (ok) {
+            onUpdated(key, holder);
+            return holder.getValue();
+        }
+        // take the newer one
+        CacheHolder<V> current = holderMap.get(key);
+        if (current != null && current.isAlive(System.currentTimeMillis())) {
+            return current.getValue();
+        }
+        return holder.getValue();
+    }
+
+    private void refresh(K key, Loader<? super K, ? extends V> loader, long lifeSpan, long negativeSpan) {
+        Flight<V> flight = new Flight<>();
+        if (flights.putIfAbsent(key, flight) != null) {
+            // loading already
+            return;
+        }
+        Executor executor = refresher;
+        if (executor == null) {
+            executor = getSharedRefresher();
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    load(key, flight, loader, lifeSpan, negativeSpan);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+            flights.remove(key, flight);
+            flight.complete(null, null);
+        }
+    }
+
+    private static Executor sharedRefresher = null;
+
+    private static synchronized Executor getSharedRefresher() {
+        Executor executor = sharedRefresher;
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(2, Daemons.getThreadFactory());
+            sharedRefresher = executor;
+        }
+        return executor;
+    }
+
     public int purge(long now) {
+        return purge(now, Integer.MAX_VALUE);
+    }
+
+    /**
+     *  Remove deprecated entries
+     *
+     * @param now   - current time
+     * @param limit - max entries to be checked this time
+     * @return count of entries removed
+     */
+    public int purge(long now, int limit) {
         if (now <= 0) {
             now = System.currentTimeMillis();
         }
-        int count = 0;
-        Set<K> allKeys = getKeys();
-        CacheHolder<V> holder;
-        for (K key : allKeys) {
-            holder = holderMap.get(key);
-            if (holder == null || holder.isDeprecated(now)) {
-                // remove expired holders
-                holderMap.remove(key);
-                ++count;
+        int count = wheel.drain(this, now, limit);
+        stats.expiredEvictions.add(count);
+        return count;
+    }
+
+    // count of keys in the expiry index
+    int getScheduledCount() {
+        return wheel.getScheduledCount();
+    }
+
+    // check whether any entry is waiting to be purged
+    boolean hasDue(long now) {
+        return wheel.hasDue(now);
+    }
+
+    // called by the expiry wheel when the key is due
+    boolean expire(K key, long now) {
+        CacheHolder<V> holder = holderMap.get(key);
+        if (holder == null) {
+            // removed already
+            return false;
+        } else if (!holder.isDeprecated(now)) {
+            // renewed or replaced after scheduled, check it later
+            wheel.schedule(key, holder.getDeprecatedTime());
+            return false;
+        } else if (pins.containsKey(key)) {
+            // being written behind, check it later
+            wheel.schedule(key, now + ExpiryWheel.SLOT_DURATION);
+            return false;
+        } else if (!holderMap.remove(key, holder)) {
+            // replaced just now
+            return false;
+        }
+        SegmentedLRU<K, V> policy = lru;
+        if (policy != null) {
+            policy.onRemove(key);
+        }
+        return true;
+    }
+
+    /**
+     *  Second tier storage behind the pool
+     */
+    public interface Tier<K, V> {
+
+        /**
+         *  Keep the entry evicted from memory
+         *
+         * @param key     - cache key
+         * @param value   - cache value
+         * @param expired - time to expired
+         */
+        void demote(K key, V value, long expired);
+
+        /**
+         *  Take the entry out for moving back to memory
+         *
+         * @param key - cache key
+         * @param now - current time
+         * @return holder with the remaining life; null on not found or expired
+         */
+        CacheHolder<V> promote(K key, long now);
+
+        void remove(K key);
+    }
+
+    /**
+     *  Weight calculator for bounded pool
+     */
+    public interface Weigher<K, V> {
+
+        /**
+         *  Estimate size of the cached value
+         *
+         * @param key   - cache key
+         * @param value - cache value, maybe null
+         * @return weight, must not be negative
+         */
+        int weigh(K key, V value);
+    }
+
+    private static final Weigher<Object, Object> SINGLETON = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    /**
+     *  Calculator for updating entry with its old value
+     */
+    public interface Updater<K, V> {
+
+        /**
+         *  Calculate new value for the key,
+         *  it's called with the entry locked, so keep it short
+         *
+         * @param key - cache key
+         * @param old - current holder; null on missed (check whether it's alive)
+         * @return new value; null to remove the entry
+         */
+        V update(K key, CacheHolder<V> old);
+    }
+
+    /**
+     *  Loader for missed entries
+     */
+    public interface Loader<K, V> {
+
+        /**
+         *  Load value for the key
+         *
+         * @param key - cache key
+         * @return null on not found
+         */
+        V load(K key);
+    }
+
+    // loading for one key
+    private static final class Flight<V> {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean dirty = false;  // pinned during the loading
+        private V value = null;
+        private RuntimeException error = null;
+
+        void complete(V result, RuntimeException exception) {
+            value = result;
+            error = exception;
+            latch.countDown();
+        }
+
+        V await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
+            if (error != null) {
+                throw error;
+            }
+            return value;
         }
-        return count;
     }
 }
@@ -0,0 +1,206 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Statistics of a cache pool
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Counters are cumulative since the pool created.
+ */
+public final class CacheStats implements CacheStatsMBean {
+
+    // upper bounds (milliseconds) of the load time histogram
+    private static final long[] LOAD_TIME_BOUNDS = {1, 4, 16, 64, 256, 1024, Long.MAX_VALUE};
+
+    private final CachePool<?, ?> pool;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder negativeHits = new LongAdder();  // hit a cached 'not found'
+    final LongAdder misses = new LongAdder();
+
+    final LongAdder loads = new LongAdder();
+    final LongAdder loadFailures = new LongAdder();
+    final LongAdder loadTime = new LongAdder();  // nanoseconds
+    private final LongAdder[] loadTimeHistogram = new LongAdder[LOAD_TIME_BOUNDS.length];
+
+    final LongAdder sizeEvictions = new LongAdder();     // evicted for capacity
+    final LongAdder expiredEvictions = new LongAdder();  // purged for deprecated
+    final LongAdder removals = new LongAdder();          // erased explicitly
+
+    final LongAdder demotions = new LongAdder();   // moved to the second tier
+    final LongAdder promotions = new LongAdder();  // moved back from the second tier
+
+    CacheStats(CachePool<?, ?> cachePool) {
+        super();
+        pool = cachePool;
+        for (int index = 0; index < loadTimeHistogram.length; ++index) {
+            loadTimeHistogram[index] = new LongAdder();
+        }
+    }
+
+    void recordLoad(long nanos, boolean success) {
+        if (success) {
+            loads.increment();
+        } else {
+            loadFailures.increment();
+        }
+        loadTime.add(nanos);
+        long millis = nanos / 1000000;
+        for (int index = 0; index < LOAD_TIME_BOUNDS.length; ++index) {
+            if (millis < LOAD_TIME_BOUNDS[index]) {
+                loadTimeHistogram[index].increment();
+                break;
+            }
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hit = hits.sum() + negativeHits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 1.0 : (double) hit / total;
+    }
+
+    @Override
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    @Override
+    public double getAverageLoadMillis() {
+        long count = loads.sum() + loadFailures.sum();
+        return count == 0 ? 0.0 : loadTime.sum() / 1000000.0 / count;
+    }
+
+    @Override
+    public long[] getLoadTimeHistogram() {
+        long[] counts = new long[loadTimeHistogram.length];
+        for (int index = 0; index < counts.length; ++index) {
+            counts[index] = loadTimeHistogram[index].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public long getSizeEvictions() {
+        return sizeEvictions.sum();
+    }
+
+    @Override
+    public long getExpiredEvictions() {
+        return expiredEvictions.sum();
+    }
+
+    @Override
+    public long getRemovals() {
+        return removals.sum();
+    }
+
+    @Override
+    public long getDemotions() {
+        return demotions.sum();
+    }
+
+    @Override
+    public long getPromotions() {
+        return promotions.sum();
+    }
+
+    @Override
+    public long getSize() {
+        return pool.getKeys().size();
+    }
+
+    @Override
+    public long getWeight() {
+        return pool.getWeight();
+    }
+
+    /**
+     *  Snapshot for logging/exporting
+     *
+     * @return stats info
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> info = new HashMap<>();
+        info.put("hits", getHits());
+        info.put("negative_hits", getNegativeHits());
+        info.put("misses", getMisses());
+        info.put("hit_ratio", getHitRatio());
+        info.put("loads", getLoads());
+        info.put("load_failures", getLoadFailures());
+        info.put("load_avg_ms", getAverageLoadMillis());
+        // histogram: "<1ms", "<4ms", ..., ">=1024ms"
+        Map<String, Object> histogram = new HashMap<>();
+        long[] counts = getLoadTimeHistogram();
+        for (int index = 0; index < counts.length; ++index) {
+            if (LOAD_TIME_BOUNDS[index] == Long.MAX_VALUE) {
+                histogram.put(">=" + LOAD_TIME_BOUNDS[index - 1] + "ms", counts[index]);
+            } else {
+                histogram.put("<" + LOAD_TIME_BOUNDS[index] + "ms", counts[index]);
+            }
+        }
+        info.put("load_time", histogram);
+        info.put("size_evictions", getSizeEvictions());
+        info.put("expired_evictions", getExpiredEvictions());
+        info.put("removals", getRemovals());
+        info.put("demotions", getDemotions());
+        info.put("promotions", getPromotions());
+        info.put("size", getSize());
+        info.put("weight", getWeight());
+        return info;
+    }
+}
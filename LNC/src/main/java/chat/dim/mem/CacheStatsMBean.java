@@ -0,0 +1,72 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+/**
+ *  Management interface for exporting cache stats via JMX
+ */
+public interface CacheStatsMBean {
+
+    long getHits();
+
+    long getNegativeHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getLoads();
+
+    long getLoadFailures();
+
+    double getAverageLoadMillis();
+
+    long[] getLoadTimeHistogram();
+
+    long getSizeEvictions();
+
+    long getExpiredEvictions();
+
+    long getRemovals();
+
+    long getDemotions();
+
+    long getPromotions();
+
+    long getSize();
+
+    /**
+     *  Get total weight (estimated bytes if weigher set)
+     *
+     * @return -1 for unbounded pool
+     */
+    long getWeight();
+}
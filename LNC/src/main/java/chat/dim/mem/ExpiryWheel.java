@@ -0,0 +1,209 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ *  Expiry index for cache pool
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Keys are put into time slots by the deprecated time of their holders,
+ *  so purging only visits the slots already passed, instead of scanning
+ *  the whole pool.
+ *
+ *  The index keeps keys only (never the holders), and at most one live
+ *  entry for each key: when a key is due, the current holder in the pool
+ *  is checked, a holder renewed or replaced after indexed will be put back
+ *  into a later slot, and a key removed from the pool is just skipped.
+ *
+ *  Keys removed from the pool before due (erased or evicted for capacity)
+ *  should be unscheduled, or they would be kept here until their slots
+ *  passed.
+ */
+final class ExpiryWheel<K> {
+
+    static long SLOT_DURATION = 1000;  // 1 second
+
+    // slot => keys deprecated in this slot
+    private final ConcurrentSkipListMap<Long, Slot<K>> slots = new ConcurrentSkipListMap<>();
+    // key => slot scheduled
+    private final ConcurrentHashMap<K, Long> scheduled = new ConcurrentHashMap<>();
+
+    private volatile long drainedSlot = Long.MIN_VALUE;
+    private volatile Slot<K> draining = null;  // closed, but not finished yet
+
+    private static long slotOf(long time) {
+        return time / SLOT_DURATION;
+    }
+
+    int getSlotCount() {
+        return slots.size();
+    }
+
+    int getScheduledCount() {
+        return scheduled.size();
+    }
+
+    void schedule(K key, long deprecatedTime) {
+        long target = slotOf(deprecatedTime);
+        long index;
+        Long old;
+        Slot<K> slot;
+        while (true) {
+            // never put into a slot which was drained
+            index = Math.max(target, drainedSlot + 1);
+            old = scheduled.get(key);
+            if (old != null && old <= index) {
+                // the key will be checked earlier, and rescheduled then
+                return;
+            } else if (old == null) {
+                if (scheduled.putIfAbsent(key, index) != null) {
+                    // scheduled by another thread just now, check again
+                    continue;
+                }
+            } else if (!scheduled.replace(key, old, index)) {
+                // changed by another thread just now, check again
+                continue;
+            }
+            slot = slots.get(index);
+            if (slot == null) {
+                slot = new Slot<>(index);
+                Slot<K> exists = slots.putIfAbsent(index, slot);
+                if (exists != null) {
+                    slot = exists;
+                }
+            }
+            slot.keys.add(key);
+            if (!slot.closed) {
+                // the drainer will see it
+                return;
+            }
+            // the slot was closed just now, try again,
+            // it's harmless if the drainer got it too
+            scheduled.remove(key, index);
+        }
+    }
+
+    /**
+     *  Remove the key from its slot
+     *
+     * @param key - key removed from the pool
+     */
+    void unschedule(K key) {
+        Long index = scheduled.remove(key);
+        if (index == null) {
+            // not scheduled
+            return;
+        }
+        Slot<K> slot = slots.get(index);
+        if (slot != null) {
+            slot.keys.remove(key);
+        }
+        // if the slot is draining now, the drainer will skip it
+    }
+
+    /**
+     *  Check whether any slot passed is waiting to be drained
+     *
+     * @param now - current time
+     * @return true on more keys due
+     */
+    boolean hasDue(long now) {
+        if (draining != null) {
+            return true;
+        }
+        Map.Entry<Long, Slot<K>> first = slots.firstEntry();
+        return first != null && first.getKey() < slotOf(now);
+    }
+
+    /**
+     *  Remove deprecated holders in the passed slots
+     *
+     * @param pool  - cache pool
+     * @param now   - current time
+     * @param limit - max entries to be visited
+     * @return count of holders removed
+     */
+    synchronized int drain(CachePool<K, ?> pool, long now, int limit) {
+        long current = slotOf(now);
+        int count = 0;
+        int visited = 0;
+        Slot<K> slot;
+        K key;
+        while (visited < limit) {
+            slot = draining;
+            if (slot == null) {
+                Map.Entry<Long, Slot<K>> first = slots.firstEntry();
+                if (first == null || first.getKey() >= current) {
+                    // no more slot passed
+                    break;
+                }
+                slot = first.getValue();
+                drainedSlot = Math.max(drainedSlot, first.getKey());
+                slot.closed = true;
+                slots.remove(first.getKey(), slot);
+                slot.cursor = slot.keys.iterator();
+                draining = slot;
+            }
+            if (!slot.cursor.hasNext()) {
+                // this slot is finished
+                draining = null;
+                continue;
+            }
+            key = slot.cursor.next();
+            slot.cursor.remove();
+            ++visited;
+            if (!scheduled.remove(key, slot.index)) {
+                // unscheduled, or rescheduled into an earlier slot
+                continue;
+            }
+            if (pool.expire(key, now)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static final class Slot<K> {
+        final Long index;
+        final Set<K> keys = ConcurrentHashMap.newKeySet();
+        volatile boolean closed = false;
+        Iterator<K> cursor = null;  // for draining
+        Slot(Long index) {
+            this.index = index;
+        }
+    }
+}
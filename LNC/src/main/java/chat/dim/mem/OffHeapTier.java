@@ -0,0 +1,276 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *  Off-heap Tier
+ *  ~~~~~~~~~~~~~
+ *
+ *  Second tier for cache pool, keeps the serialized values out of the heap,
+ *  in direct buffers or a memory-mapped file, indexed by key string.
+ *
+ *  The space is split into segments and written like a ring: when the last
+ *  segment is full, the oldest one will be cleared and reused, so entries
+ *  are dropped in FIFO order by segment.
+ *
+ *  Entries are exclusive with the pool: an entry is removed from this tier
+ *  when it's promoted, updated or erased.
+ *
+ *  NOTICE: direct buffers are limited by '-XX:MaxDirectMemorySize'
+ */
+public class OffHeapTier<K, V> implements CachePool.Tier<K, V> {
+
+    public static int SEGMENT_SIZE = 4 * 1024 * 1024;  // 4 MB
+
+    private final Codec<V> codec;
+
+    private final Segment[] segments;
+    private int current = 0;  // index of the writing segment
+
+    // key string => location
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+
+    /**
+     *  Create tier with direct buffers
+     *
+     * @param capacity - total size in bytes
+     * @param coder    - value serializer
+     */
+    public OffHeapTier(long capacity, Codec<V> coder) {
+        super();
+        codec = coder;
+        int count = getSegmentCount(capacity);
+        segments = new Segment[count];
+        for (int pos = 0; pos < count; ++pos) {
+            segments[pos] = new Segment(ByteBuffer.allocateDirect(SEGMENT_SIZE));
+        }
+    }
+
+    /**
+     *  Create tier with memory-mapped file,
+     *  the contents will NOT be reused after restarted
+     *
+     * @param file     - swap file
+     * @param capacity - total size in bytes
+     * @param coder    - value serializer
+     */
+    public OffHeapTier(File file, long capacity, Codec<V> coder) throws IOException {
+        super();
+        codec = coder;
+        int count = getSegmentCount(capacity);
+        segments = new Segment[count];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength((long) count * SEGMENT_SIZE);
+            FileChannel channel = raf.getChannel();
+            for (int pos = 0; pos < count; ++pos) {
+                // the mapping stays valid after the channel closed
+                segments[pos] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) pos * SEGMENT_SIZE, SEGMENT_SIZE));
+            }
+        }
+    }
+
+    private static int getSegmentCount(long capacity) {
+        long count = capacity / SEGMENT_SIZE;
+        // at least 2 segments, so clearing the oldest one won't drop all
+        return (int) Math.max(2, Math.min(count, Integer.MAX_VALUE));
+    }
+
+    /**
+     *  Get count of entries
+     *
+     * @return entries count
+     */
+    public int getSize() {
+        return index.size();
+    }
+
+    public long getCapacity() {
+        return (long) segments.length * SEGMENT_SIZE;
+    }
+
+    @Override
+    public void demote(K key, V value, long expired) {
+        byte[] data;
+        try {
+            data = codec.encode(value);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (data == null || data.length == 0 || data.length > SEGMENT_SIZE) {
+            // cannot be stored
+            return;
+        }
+        String name = String.valueOf(key);
+        Location location;
+        synchronized (this) {
+            Segment segment = segments[current];
+            if (segment.position + data.length > SEGMENT_SIZE) {
+                // current segment full, clear the oldest one for writing
+                current = (current + 1) % segments.length;
+                segment = segments[current];
+                clear(segment);
+            }
+            location = new Location(segment, segment.generation, segment.position, data.length, expired);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(segment.position);
+            buffer.put(data);
+            segment.position += data.length;
+            segment.keys.add(name);
+        }
+        // publish after the data written
+        index.put(name, location);
+    }
+
+    // drop all entries in the segment
+    private void clear(Segment segment) {
+        Lock writeLock = segment.lock.writeLock();
+        writeLock.lock();
+        try {
+            segment.generation += 1;
+            segment.position = 0;
+        } finally {
+            writeLock.unlock();
+        }
+        Location location;
+        for (String name : segment.keys) {
+            location = index.get(name);
+            if (location != null && location.segment == segment && location.generation != segment.generation) {
+                index.remove(name, location);
+            }
+        }
+        segment.keys.clear();
+    }
+
+    @Override
+    public CacheHolder<V> promote(K key, long now) {
+        Location location = index.remove(String.valueOf(key));
+        if (location == null) {
+            // not found
+            return null;
+        }
+        if (now <= 0) {
+            now = System.currentTimeMillis();
+        }
+        if (now >= location.expired) {
+            // expired
+            return null;
+        }
+        byte[] data = new byte[location.length];
+        Segment segment = location.segment;
+        Lock readLock = segment.lock.readLock();
+        readLock.lock();
+        try {
+            if (segment.generation != location.generation) {
+                // overwritten
+                return null;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(location.offset);
+            buffer.get(data);
+        } finally {
+            readLock.unlock();
+        }
+        V value;
+        try {
+            value = codec.decode(data);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (value == null) {
+            return null;
+        }
+        // keep the remaining life
+        return new CacheHolder<>(value, location.expired - now, now);
+    }
+
+    @Override
+    public void remove(K key) {
+        index.remove(String.valueOf(key));
+    }
+
+    /**
+     *  Serializer for values stored in bytes
+     */
+    public interface Codec<V> {
+
+        byte[] encode(V value);
+
+        V decode(byte[] data);
+    }
+
+    private static final class Segment {
+
+        final ByteBuffer buffer;
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // guarded by the tier (writing) and the segment lock (clearing)
+        volatile int generation = 0;
+        int position = 0;
+        final List<String> keys = new ArrayList<>();
+
+        Segment(ByteBuffer data) {
+            super();
+            buffer = data;
+        }
+    }
+
+    private static final class Location {
+
+        final Segment segment;
+        final int generation;
+        final int offset;
+        final int length;
+        final long expired;
+
+        Location(Segment segment, int generation, int offset, int length, long expired) {
+            this.segment = segment;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+            this.expired = expired;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ *  Segmented LRU for bounded cache pool
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  New entries go to the probation segment, and will be promoted to the
+ *  protected segment when read again, so a scan of one-time keys can only
+ *  evict the other one-time keys.
+ *
+ *  Reads are recorded into a lossy buffer and replayed by whoever holds
+ *  the lock next, so the readers never block.
+ *
+ *  Pinned entries (being written behind) are skipped when evicting,
+ *  they are moved to the MRU end of the protected segment instead.
+ */
+final class SegmentedLRU<K, V> {
+
+    static int READ_BUFFER_SIZE = 256;
+    static int DRAIN_THRESHOLD = 32;
+
+    private final ConcurrentMap<K, CacheHolder<V>> holderMap;
+    private final CachePool.Weigher<? super K, ? super V> weigher;
+    private final long maxWeight;
+    private final long maxProtected;  // 80% for the protected segment
+    private final Predicate<K> pinned;
+
+    // LRU first
+    private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<V>> protect = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationWeight = 0;
+    private long protectedWeight = 0;
+
+    private final Queue<K> readBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger readCount = new AtomicInteger(0);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    SegmentedLRU(ConcurrentMap<K, CacheHolder<V>> map, long capacity, CachePool.Weigher<? super K, ? super V> weigher,
+                 Predicate<K> pinned) {
+        super();
+        holderMap = map;
+        this.weigher = weigher;
+        maxWeight = capacity;
+        maxProtected = capacity - capacity / 5;
+        this.pinned = pinned;
+    }
+
+    long getWeight() {
+        lock.lock();
+        try {
+            return probationWeight + protectedWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Record a read, never blocks
+     */
+    void onRead(K key) {
+        if (readCount.incrementAndGet() > READ_BUFFER_SIZE) {
+            // buffer full, drop it
+            readCount.decrementAndGet();
+        } else {
+            readBuffer.add(key);
+        }
+        if (readCount.get() >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drainReads();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     *  Record a write, evict LRU entries if the pool is overweight
+     *
+     * @param evicted - map for collecting evicted entries, null to ignore
+     * @return count of evicted entries
+     */
+    int onWrite(K key, Map<K, CacheHolder<V>> evicted) {
+        lock.lock();
+        try {
+            drainReads();
+            track(key);
+            return evict(evicted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Forget the entry after it's removed from the pool
+     */
+    void onRemove(K key) {
+        lock.lock();
+        try {
+            // it may be put back by another thread
+            track(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // sync the entry with the pool
+    private void track(K key) {
+        // the holder may be replaced by another thread,
+        // so take the current one in the pool
+        CacheHolder<V> holder = holderMap.get(key);
+        if (holder == null) {
+            remove(key);
+            return;
+        }
+        int weight = weigher.weigh(key, holder.getValue());
+        Node<V> node = probation.get(key);
+        if (node != null) {
+            probationWeight += weight - node.weight;
+        } else if ((node = protect.get(key)) != null) {
+            protectedWeight += weight - node.weight;
+        } else {
+            node = new Node<>();
+            probation.put(key, node);
+            probationWeight += weight;
+        }
+        node.holder = holder;
+        node.weight = weight;
+    }
+
+    private void remove(K key) {
+        Node<V> node = probation.remove(key);
+        if (node != null) {
+            probationWeight -= node.weight;
+        } else if ((node = protect.remove(key)) != null) {
+            protectedWeight -= node.weight;
+        }
+    }
+
+    private void drainReads() {
+        K key;
+        Node<V> node;
+        while ((key = readBuffer.poll()) != null) {
+            readCount.decrementAndGet();
+            node = probation.remove(key);
+            if (node != null) {
+                // read again, promote it
+                probationWeight -= node.weight;
+                protect.put(key, node);
+                protectedWeight += node.weight;
+            } else {
+                // move to MRU (access order)
+                protect.get(key);
+            }
+        }
+        // demote the LRU entries of the protected segment
+        Iterator<Map.Entry<K, Node<V>>> iterator = protect.entrySet().iterator();
+        Map.Entry<K, Node<V>> eldest;
+        while (protectedWeight > maxProtected && iterator.hasNext()) {
+            eldest = iterator.next();
+            iterator.remove();
+            protectedWeight -= eldest.getValue().weight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += eldest.getValue().weight;
+        }
+    }
+
+    private int evict(Map<K, CacheHolder<V>> evicted) {
+        int count = 0;
+        // each pinned entry is skipped twice at most
+        int skipping = (probation.size() + protect.size()) << 1;
+        Iterator<Map.Entry<K, Node<V>>> iterator;
+        Map.Entry<K, Node<V>> eldest;
+        LinkedHashMap<K, Node<V>> segment;
+        while (probationWeight + protectedWeight > maxWeight) {
+            if (probation.size() > 0) {
+                segment = probation;
+            } else if (protect.size() > 0) {
+                segment = protect;
+            } else {
+                break;
+            }
+            iterator = segment.entrySet().iterator();
+            eldest = iterator.next();
+            if (pinned != null && pinned.test(eldest.getKey())) {
+                if (--skipping < 0) {
+                    // all pinned
+                    break;
+                }
+                // move to the MRU end of the protected segment
+                iterator.remove();
+                if (segment == probation) {
+                    probationWeight -= eldest.getValue().weight;
+                    protectedWeight += eldest.getValue().weight;
+                }
+                protect.put(eldest.getKey(), eldest.getValue());
+                continue;
+            }
+            iterator.remove();
+            if (segment == probation) {
+                probationWeight -= eldest.getValue().weight;
+            } else {
+                protectedWeight -= eldest.getValue().weight;
+            }
+            // remove from the pool, unless it was replaced just now
+            if (holderMap.remove(eldest.getKey(), eldest.getValue().holder)) {
+                if (evicted != null) {
+                    evicted.put(eldest.getKey(), eldest.getValue().holder);
+                }
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    static final class Node<V> {
+        CacheHolder<V> holder;
+        int weight;
+    }
+}
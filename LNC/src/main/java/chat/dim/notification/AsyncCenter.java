@@ -30,70 +30,97 @@
  */
 package chat.dim.notification;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import chat.dim.daemon.Daemons;
 
 /**
  *  Asynchronous Notification Center
  *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
  *
- *  call for each observers in background thread
+ *  call for each observers in background threads
+ *
+ *  Notifications are dispatched to the workers by name, so the notifications
+ *  with the same name will be delivered in order, by the same worker;
+ *  posting never blocks, and an idle worker will be woken up immediately.
  */
 public class AsyncCenter extends BaseCenter implements Runnable {
 
-    private final List<Notification> notifications = new ArrayList<>();
-    private final ReadWriteLock notificationLock = new ReentrantReadWriteLock();
+    /**
+     *  Default count of workers
+     */
+    public static int WORKERS = 2;
 
-    private boolean running = false;
-    private Thread thread = null;
+    private final Worker[] workers;
 
-    @Override
-    public void postNotification(Notification notification) {
-        Lock writeLock = notificationLock.writeLock();
-        writeLock.lock();
-        try {
-            notifications.add(notification);
-        } finally {
-            writeLock.unlock();
+    private volatile boolean running = false;
+
+    // delivery stats
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder totalLatency = new LongAdder();  // nanoseconds
+    private final AtomicLong maxLatency = new AtomicLong(0);
+
+    public AsyncCenter(int workerCount) {
+        super();
+        workers = new Worker[Math.max(1, workerCount)];
+        for (int index = 0; index < workers.length; ++index) {
+            workers[index] = new Worker();
         }
     }
 
-    private Notification nextNotification() {
-        Notification next = null;
-        Lock writeLock = notificationLock.writeLock();
-        writeLock.lock();
-        try {
-            if (notifications.size() > 0) {
-                next = notifications.remove(0);
-            }
-        } finally {
-            writeLock.unlock();
-        }
-        return next;
+    public AsyncCenter() {
+        this(WORKERS);
+    }
+
+    @Override
+    public void postNotification(Notification notification) {
+        String name = notification.name;
+        int index = name == null ? 0 : (name.hashCode() & 0x7fffffff) % workers.length;
+        workers[index].append(new Envelope(notification));
     }
 
     public void start() {
         forceStop();
+        // the workers stopped by timeout may still be delivering,
+        // restart now will break the order of notifications
+        for (Worker worker : workers) {
+            if (worker.thread != null) {
+                throw new IllegalStateException("old workers still running, try again later");
+            }
+        }
         running = true;
-        Thread thr = new Thread(this);
-        thr.setDaemon(true);
-        thr.start();
-        thread = thr;
+        Thread thr;
+        for (Worker worker : workers) {
+            thr = Daemons.newThread(worker);
+            worker.thread = thr;
+            thr.start();
+        }
     }
 
     private void forceStop() {
         running = false;
-        Thread thr = thread;
-        if (thr != null) {
-            thread = null;
+        Thread thr;
+        for (Worker worker : workers) {
+            thr = worker.thread;
+            if (thr == null) {
+                continue;
+            }
+            LockSupport.unpark(thr);
             try {
                 thr.join(1024);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
+            if (!thr.isAlive()) {
+                // keep the thread while it's still running
+                worker.thread = null;
+            }
         }
     }
 
@@ -105,6 +132,44 @@ public class AsyncCenter extends BaseCenter implements Runnable {
         return running;
     }
 
+    /**
+     *  Get count of notifications waiting for delivery
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        int count = 0;
+        for (Worker worker : workers) {
+            count += worker.depth.get();
+        }
+        return count;
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    /**
+     *  Get average time from posted to delivered
+     *
+     * @return milliseconds
+     */
+    public double getAverageLatencyMillis() {
+        long count = deliveredCount.sum();
+        return count == 0 ? 0.0 : totalLatency.sum() / 1000000.0 / count;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatency.get() / 1000000.0;
+    }
+
+    /**
+     *  Process notifications in the current thread
+     *
+     *  Deprecated, the notifications are delivered by the workers now,
+     *  call 'start()' instead of running this center in your own thread.
+     */
+    @Deprecated
     @Override
     public void run() {
         while (isRunning()) {
@@ -114,6 +179,7 @@ public class AsyncCenter extends BaseCenter implements Runnable {
         }
     }
 
+    @Deprecated
     protected void idle() {
         try {
             Thread.sleep(128);
@@ -122,14 +188,88 @@ public class AsyncCenter extends BaseCenter implements Runnable {
         }
     }
 
+    @Deprecated
     protected boolean process() {
-        Notification notification = nextNotification();
-        if (notification == null) {
-            // nothing to do now,
-            // return false to have a rest ^_^
-            return false;
+        Envelope envelope;
+        for (Worker worker : workers) {
+            if (worker.thread != null) {
+                // this worker is running, don't disturb its order
+                continue;
+            }
+            envelope = worker.queue.poll();
+            if (envelope != null) {
+                worker.depth.decrementAndGet();
+                deliver(envelope);
+                return true;
+            }
+        }
+        // nothing to do now,
+        // return false to have a rest ^_^
+        return false;
+    }
+
+    // do posting and count the latency
+    private void deliver(Envelope envelope) {
+        long latency = System.nanoTime() - envelope.time;
+        deliveredCount.increment();
+        totalLatency.add(latency);
+        maxLatency.accumulateAndGet(latency, Math::max);
+        try {
+            post(envelope.notification);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Envelope {
+
+        final Notification notification;
+        final long time = System.nanoTime();  // posted time
+
+        Envelope(Notification notification) {
+            this.notification = notification;
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger(0);
+
+        private final AtomicBoolean sleeping = new AtomicBoolean(false);
+        private volatile Thread thread = null;
+
+        void append(Envelope envelope) {
+            queue.add(envelope);
+            depth.incrementAndGet();
+            // wake up the worker only if it's sleeping
+            if (sleeping.get() && sleeping.compareAndSet(true, false)) {
+                Thread thr = thread;
+                if (thr != null) {
+                    LockSupport.unpark(thr);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            Envelope envelope;
+            while (isRunning()) {
+                envelope = queue.poll();
+                if (envelope != null) {
+                    depth.decrementAndGet();
+                    deliver(envelope);
+                    continue;
+                }
+                // nothing to do now, have a rest ^_^
+                sleeping.set(true);
+                if (queue.isEmpty() && isRunning()) {
+                    // check again before parking, for the notification
+                    // appended before the flag set
+                    LockSupport.park(this);
+                }
+                sleeping.set(false);
+            }
         }
-        post(notification);
-        return true;
     }
 }
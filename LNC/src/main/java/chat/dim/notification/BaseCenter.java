@@ -30,21 +30,26 @@
  */
 package chat.dim.notification;
 
-import java.util.Collections;
-import java.util.Hashtable;
+import java.lang.ref.WeakReference;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ *  Observers are kept in immutable arrays (weak references) for each name,
+ *  the array will be replaced when observers changed, so posting needs no
+ *  lock and no copy.
+ */
 public abstract class BaseCenter {
 
-    // name => WeakSet<Observer>
-    private final Map<String, Set<Observer>> allObservers = new Hashtable<>();
-    private final ReadWriteLock observerLock = new ReentrantReadWriteLock();
+    // name => WeakReference<Observer>[]
+    private final Map<String, WeakReference<Observer>[]> allObservers = new ConcurrentHashMap<>();
+    private final Lock observerLock = new ReentrantLock();  // for writing
+
+    // some observers were released, clean up when next writing
+    private volatile boolean dirty = false;
 
     /**
      *  Add observer with notification name
@@ -53,20 +58,22 @@ public abstract class BaseCenter {
      * @param name     - notification name
      */
     public void addObserver(Observer observer, String name) {
-        Lock writeLock = observerLock.writeLock();
-        writeLock.lock();
+        observerLock.lock();
         try {
-            Set<Observer> listeners = allObservers.get(name);
+            cleanup();
+            WeakReference<Observer>[] listeners = allObservers.get(name);
             if (listeners == null) {
-                // WeakSet<E>
-                listeners = Collections.newSetFromMap(new WeakHashMap<>());
-                listeners.add(observer);
+                listeners = newArray(1);
+                listeners[0] = new WeakReference<>(observer);
                 allObservers.put(name, listeners);
-            } else {
-                listeners.add(observer);
+            } else if (indexOf(listeners, observer) < 0) {
+                WeakReference<Observer>[] array = newArray(listeners.length + 1);
+                System.arraycopy(listeners, 0, array, 0, listeners.length);
+                array[listeners.length] = new WeakReference<>(observer);
+                allObservers.put(name, array);
             }
         } finally {
-            writeLock.unlock();
+            observerLock.unlock();
         }
     }
 
@@ -77,18 +84,21 @@ public abstract class BaseCenter {
      * @param name     - notification name
      */
     public void removeObserver(Observer observer, String name) {
-        Lock writeLock = observerLock.writeLock();
-        writeLock.lock();
+        observerLock.lock();
         try {
-            Set<Observer> listeners = allObservers.get(name);
-            if (listeners != null && listeners.remove(observer)) {
+            cleanup();
+            WeakReference<Observer>[] listeners = allObservers.get(name);
+            int pos = listeners == null ? -1 : indexOf(listeners, observer);
+            if (pos >= 0) {
                 // observer removed
-                if (listeners.size() == 0) {
+                if (listeners.length == 1) {
                     allObservers.remove(name);
+                } else {
+                    allObservers.put(name, removeAt(listeners, pos));
                 }
             }
         } finally {
-            writeLock.unlock();
+            observerLock.unlock();
         }
     }
 
@@ -98,41 +108,90 @@ public abstract class BaseCenter {
      * @param observer - listener
      */
     public void removeObserver(Observer observer) {
-        Lock writeLock = observerLock.writeLock();
-        writeLock.lock();
+        observerLock.lock();
         try {
-            Iterator<Map.Entry<String, Set<Observer>>> iterator = allObservers.entrySet().iterator();
-            Map.Entry<String, Set<Observer>> entry;
-            Set<Observer> listeners;
+            cleanup();
+            Iterator<Map.Entry<String, WeakReference<Observer>[]>> iterator = allObservers.entrySet().iterator();
+            Map.Entry<String, WeakReference<Observer>[]> entry;
+            WeakReference<Observer>[] listeners;
+            int pos;
             while (iterator.hasNext()) {
                 entry = iterator.next();
                 listeners = entry.getValue();
-                if (listeners != null && listeners.remove(observer)) {
-                    // observer removed
-                    if (listeners.size() == 0) {
-                        iterator.remove();
-                    }
+                pos = indexOf(listeners, observer);
+                if (pos < 0) {
+                    continue;
+                }
+                // observer removed
+                if (listeners.length == 1) {
+                    iterator.remove();
+                } else {
+                    entry.setValue(removeAt(listeners, pos));
                 }
             }
         } finally {
-            writeLock.unlock();
+            observerLock.unlock();
         }
     }
 
-    private Observer[] getObservers(String name) {
-        Observer[] observers = null;
-        Lock writeLock = observerLock.writeLock();
-        writeLock.lock();
-        try {
-            Set<Observer> listeners = allObservers.get(name);
-            if (listeners != null && listeners.size() > 0) {
-                observers = new Observer[listeners.size()];
-                observers = listeners.toArray(observers);
+    // drop the released observers, must be called by writer
+    private void cleanup() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Iterator<Map.Entry<String, WeakReference<Observer>[]>> iterator = allObservers.entrySet().iterator();
+        Map.Entry<String, WeakReference<Observer>[]> entry;
+        WeakReference<Observer>[] listeners;
+        WeakReference<Observer>[] array;
+        int count;
+        while (iterator.hasNext()) {
+            entry = iterator.next();
+            listeners = entry.getValue();
+            count = 0;
+            for (WeakReference<Observer> ref : listeners) {
+                if (ref.get() != null) {
+                    ++count;
+                }
             }
-        } finally {
-            writeLock.unlock();
+            if (count == listeners.length) {
+                continue;
+            } else if (count == 0) {
+                iterator.remove();
+                continue;
+            }
+            array = newArray(count);
+            count = 0;
+            for (WeakReference<Observer> ref : listeners) {
+                if (ref.get() != null) {
+                    array[count++] = ref;
+                }
+            }
+            entry.setValue(array);
         }
-        return observers;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static WeakReference<Observer>[] newArray(int length) {
+        return new WeakReference[length];
+    }
+
+    private static int indexOf(WeakReference<Observer>[] listeners, Observer observer) {
+        Observer item;
+        for (int pos = 0; pos < listeners.length; ++pos) {
+            item = listeners[pos].get();
+            if (item == observer || (item != null && item.equals(observer))) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static WeakReference<Observer>[] removeAt(WeakReference<Observer>[] listeners, int pos) {
+        WeakReference<Observer>[] array = newArray(listeners.length - 1);
+        System.arraycopy(listeners, 0, array, 0, pos);
+        System.arraycopy(listeners, pos + 1, array, pos, listeners.length - pos - 1);
+        return array;
     }
 
     /**
@@ -155,13 +214,19 @@ public abstract class BaseCenter {
 
     // do posting
     protected void post(Notification notification) {
-        Observer[] observers = getObservers(notification.name);
+        WeakReference<Observer>[] observers = allObservers.get(notification.name);
         if (observers == null) {
             // no observer for this notification
             return;
         }
-        for (Observer item : observers) {
+        Observer item;
+        for (WeakReference<Observer> ref : observers) {
+            item = ref.get();
             if (item == null) {
+                // released, clean up later
+                if (!dirty) {
+                    dirty = true;
+                }
                 continue;
             }
             try {
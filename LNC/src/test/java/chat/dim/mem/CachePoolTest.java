@@ -0,0 +1,257 @@
+/* license: https://mit-license.org
+ *
+ *  LNC: Log, Notification & Cache
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachePoolTest {
+
+    @Test
+    public void testCompute() {
+        CachePool<String, List<String>> pool = new CachePool<>();
+        // missed, not installed
+        Assert.assertNull(pool.compute("k", (key, old) -> null, 60000));
+        Assert.assertNull(pool.fetch("k", 0));
+        pool.update("k", new ArrayList<>(), 60000, 0);
+        // concurrent updates of the same key won't lose any one
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            String item = "v" + i;
+            threads.add(new Thread(() -> pool.compute("k", (key, old) -> {
+                List<String> values = new ArrayList<>(old.getValue());
+                values.add(item);
+                return values;
+            }, 60000)));
+        }
+        joinAll(threads);
+        Assert.assertEquals(8, pool.fetch("k", 0).value.size());
+        // removed
+        Assert.assertNull(pool.compute("k", (key, old) -> null, 60000));
+        Assert.assertNull(pool.fetch("k", 0));
+    }
+
+    @Test
+    public void testEviction() {
+        CachePool<String, String> pool = new CachePool<>();
+        pool.setCapacity(2);
+        for (int i = 0; i < 10; ++i) {
+            pool.update("k" + i, "v" + i, 3600 * 1000, 0);
+        }
+        Assert.assertEquals(2, pool.getKeys().size());
+        Assert.assertEquals(8, pool.getStats().getSizeEvictions());
+        // the evicted keys are dropped from the expiry index too
+        Assert.assertEquals(2, pool.getScheduledCount());
+        // shrink
+        pool.setCapacity(1);
+        Assert.assertEquals(1, pool.getKeys().size());
+        Assert.assertEquals(1, pool.getScheduledCount());
+    }
+
+    @Test
+    public void testExpiry() {
+        CachePool<String, String> pool = new CachePool<>();
+        long now = System.currentTimeMillis();
+        pool.update("short", "v1", 1000, now);
+        pool.update("long", "v2", 3600 * 1000, now);
+        Assert.assertEquals(2, pool.getScheduledCount());
+        // expired, but not deprecated yet
+        Assert.assertNull(pool.fetch("short", now + 1500).value);
+        Assert.assertEquals(0, pool.purge(now + 1500));
+        // deprecated
+        Assert.assertEquals(1, pool.purge(now + 5000));
+        Assert.assertNull(pool.fetch("short", now + 5000));
+        Assert.assertEquals("v2", pool.fetch("long", now + 5000).value);
+        Assert.assertEquals(1, pool.getScheduledCount());
+        // erased
+        pool.erase("long", 0);
+        Assert.assertEquals(0, pool.getScheduledCount());
+        Assert.assertEquals(0, pool.purge(now + 3600 * 1000 * 3));
+    }
+
+    @Test
+    public void testSingleFlight() {
+        CachePool<String, String> pool = new CachePool<>();
+        AtomicInteger loads = new AtomicInteger(0);
+        List<String> results = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            threads.add(new Thread(() -> {
+                String value = pool.get("k", key -> {
+                    loads.incrementAndGet();
+                    sleep(100);
+                    return "v";
+                }, 60000, 60000);
+                synchronized (results) {
+                    results.add(value);
+                }
+            }));
+        }
+        joinAll(threads);
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(8, results.size());
+        for (String value : results) {
+            Assert.assertEquals("v", value);
+        }
+    }
+
+    @Test
+    public void testLoadKeepsNewerValue() throws InterruptedException {
+        CachePool<String, String> pool = new CachePool<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch updated = new CountDownLatch(1);
+        AtomicReference<String> result = new AtomicReference<>();
+        Thread thread = new Thread(() -> result.set(pool.get("k", key -> {
+            loading.countDown();
+            await(updated);
+            // read before the update
+            return "old";
+        }, 60000, 60000)));
+        thread.start();
+        loading.await();
+        pool.update("k", "new", 60000, 0);
+        updated.countDown();
+        thread.join();
+        Assert.assertEquals("new", result.get());
+        Assert.assertEquals("new", pool.fetch("k", 0).value);
+    }
+
+    @Test
+    public void testPinnedNotEvicted() {
+        CachePool<String, String> pool = new CachePool<>();
+        pool.setCapacity(2);
+        pool.pin("a");
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            pool.update(key, key, 60000, 0);
+        }
+        Assert.assertNotNull(pool.fetch("a", 0));
+        Assert.assertNull(pool.fetch("b", 0));
+        Assert.assertEquals(2, pool.getKeys().size());
+        pool.unpin("a");
+        // all pinned, over capacity for a while
+        pool.pin("x");
+        pool.pin("y");
+        pool.pin("z");
+        for (String key : new String[]{"x", "y", "z"}) {
+            pool.update(key, key, 60000, 0);
+        }
+        Assert.assertNotNull(pool.fetch("x", 0));
+        Assert.assertNotNull(pool.fetch("y", 0));
+        Assert.assertNotNull(pool.fetch("z", 0));
+    }
+
+    @Test
+    public void testPinnedNotExpired() {
+        CachePool<String, String> pool = new CachePool<>();
+        long now = System.currentTimeMillis();
+        pool.update("k", "v", 1000, now);
+        pool.pin("k");
+        Assert.assertEquals(0, pool.purge(now + 5000));
+        Assert.assertNotNull(pool.fetch("k", now + 5000));
+        pool.unpin("k");
+        Assert.assertEquals(1, pool.purge(now + 10000));
+    }
+
+    @Test
+    public void testLoadWaitsUnpinned() throws InterruptedException {
+        CachePool<String, String> pool = new CachePool<>();
+        AtomicReference<String> storage = new AtomicReference<>("old");
+        AtomicReference<String> result = new AtomicReference<>();
+        // pinned twice, loaded after both written
+        pool.pin("k");
+        pool.pin("k");
+        Thread thread = new Thread(() -> result.set(pool.get("k", key -> storage.get(), 60000, 60000)));
+        thread.start();
+        sleep(50);
+        pool.unpin("k");
+        sleep(50);
+        storage.set("new");
+        pool.unpin("k");
+        thread.join();
+        Assert.assertFalse(pool.isPinned("k"));
+        Assert.assertEquals("new", result.get());
+    }
+
+    @Test
+    public void testPinnedWhileLoading() throws InterruptedException {
+        CachePool<String, String> pool = new CachePool<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch pinned = new CountDownLatch(1);
+        Thread thread = new Thread(() -> pool.get("k", key -> {
+            loading.countDown();
+            await(pinned);
+            return "old";
+        }, 60000, 60000));
+        thread.start();
+        loading.await();
+        pool.pin("k");
+        pinned.countDown();
+        thread.join();
+        // the value loaded maybe stale, not cached
+        Assert.assertNull(pool.fetch("k", 0));
+        pool.unpin("k");
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void joinAll(List<Thread> threads) {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
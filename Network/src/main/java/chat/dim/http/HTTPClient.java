@@ -43,6 +43,7 @@ import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import chat.dim.daemon.Daemons;
 import chat.dim.digest.MD5;
 import chat.dim.filesys.ExternalStorage;
 import chat.dim.filesys.Paths;
@@ -187,8 +188,7 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
      */
     public void start() {
         stop();
-        Thread thr = new Thread(this);
-        thr.setDaemon(true);
+        Thread thr = Daemons.newThread(this);
         thr.start();
         thread = thr;
     }
@@ -37,8 +37,12 @@ import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.channels.SocketChannel;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import chat.dim.log.Log;
+import chat.dim.mtp.StreamPorter;
 import chat.dim.net.Connection;
 import chat.dim.net.Hub;
 import chat.dim.pack.DeparturePacker;
@@ -53,17 +57,25 @@ import chat.dim.socket.BaseChannel;
 import chat.dim.tcp.StreamChannel;
 import chat.dim.tcp.StreamHub;
 
-public class GateKeeper extends Runner implements Porter.Delegate {
+public class GateKeeper extends Runner implements StreamPorter.BatchDelegate {
 
     private final SocketAddress remoteAddress;
+    private final SocketChannel socketChannel;  // null for client
     private final CommonGate<StreamHub> gate;
     private final MessageQueue queue;
     private boolean active;
     private Date lastActive;  // last update time
 
+    // wakeup signal
+    private final AtomicBoolean signal = new AtomicBoolean(false);
+    private volatile Thread sleeper = null;
+    private volatile KeeperLoop loop = null;  // shared loop driving this keeper
+    private int idleRounds = 0;
+
     public GateKeeper(SocketAddress remote, SocketChannel sock) {
         super(Runner.INTERVAL_SLOW);
         remoteAddress = remote;
+        socketChannel = sock;
         gate = createGate(remote, sock);
         queue = new MessageQueue();
         active = false;
@@ -137,6 +149,15 @@ public class GateKeeper extends Runner implements Porter.Delegate {
         return remoteAddress;
     }
 
+    /**
+     *  Get accepted socket for selecting
+     *
+     * @return null for client
+     */
+    public SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
     public CommonGate<StreamHub> getGate() {
         return gate;
     }
@@ -173,7 +194,7 @@ public class GateKeeper extends Runner implements Porter.Delegate {
             }
             docker = gate.fetchPorter(remoteAddress, null);
             if (docker == null) {
-                Log.error("gate error: " + remoteAddress);
+                Log.error("gate error: {}", remoteAddress);
                 reconnectTime = now + 8000;
                 return false;
             }
@@ -185,6 +206,7 @@ public class GateKeeper extends Runner implements Porter.Delegate {
             boolean outgoing = gate.process();
             if (incoming || outgoing) {
                 // processed income/outgo packages
+                idleRounds = 0;
                 return true;
             }
         } catch (Exception e) {
@@ -196,28 +218,112 @@ public class GateKeeper extends Runner implements Porter.Delegate {
             queue.purge();
             return false;
         }
-        // get next message
-        MessageWrapper wrapper = queue.next();
-        if (wrapper == null) {
+        // get next messages, the porter will write them together
+        List<MessageWrapper> wrappers = queue.next(COALESCE_BYTES);
+        if (wrappers.isEmpty()) {
             // no more task now, purge failed task
             queue.purge();
+            if (docker instanceof StreamPorter && ((StreamPorter) docker).hasPendingPages()) {
+                // pages held in the flush window, check again soon
+                idleRounds = 0;
+            }
             return false;
         }
+        idleRounds = 0;
         // if msg in this wrapper is null (means sent successfully),
         // it must have bean cleaned already, so iit should not be empty here
-        ReliableMessage msg = wrapper.getMessage();
-        if (msg == null) {
-            // msg sent?
-            return true;
-        }
-        // try to push
-        boolean ok = docker.sendShip(wrapper);
-        if (!ok) {
-            Log.error("docker error: " + remoteAddress + ", " + docker);
+        for (MessageWrapper wrapper : wrappers) {
+            if (wrapper.getMessage() == null) {
+                // msg sent?
+                continue;
+            }
+            // try to push
+            if (!docker.sendShip(wrapper)) {
+                Log.error("docker error: {}, {}", remoteAddress, docker);
+            }
         }
         return true;
     }
 
+    /**
+     *  Idle interval grows from min to max while nothing to do,
+     *  and falls back to min after woken up or busy.
+     */
+    public static long IDLE_INTERVAL_MIN = Runner.INTERVAL_FAST;
+    public static long IDLE_INTERVAL_MAX = Runner.INTERVAL_SLOW;
+
+    @Override
+    protected void idle() {
+        long interval = IDLE_INTERVAL_MIN << Math.min(idleRounds, 16);
+        if (interval < IDLE_INTERVAL_MAX) {
+            ++idleRounds;
+        } else {
+            interval = IDLE_INTERVAL_MAX;
+        }
+        // park until timeout or woken up
+        sleeper = Thread.currentThread();
+        if (!signal.get()) {
+            LockSupport.parkNanos(this, interval * 1000000L);
+        }
+        sleeper = null;
+        if (signal.getAndSet(false)) {
+            idleRounds = 0;
+        }
+    }
+
+    /**
+     *  Wake up the keeper to process immediately,
+     *  call it after new message queued or porter status changed
+     */
+    public void wakeup() {
+        KeeperLoop driver = loop;
+        if (driver != null) {
+            driver.wakeup(this);
+            return;
+        }
+        signal.set(true);
+        Thread thread = sleeper;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    void setLoop(KeeperLoop driver) {
+        loop = driver;
+    }
+
+    /**
+     *  Messages pushed to the porter in one round
+     *  while the total size not exceeds this limit
+     */
+    public static int COALESCE_BYTES = 16 * 1024;  // 16 KB
+
+    /**
+     *  Get count of writes by the porter
+     *
+     * @return count of writes
+     */
+    public long getFlushCount() {
+        Porter docker = gate.getPorter(remoteAddress, null);
+        if (docker instanceof StreamPorter) {
+            return ((StreamPorter) docker).getFlushCount();
+        }
+        return 0;
+    }
+
+    /**
+     *  Get count of pages written together with other pages
+     *
+     * @return count of coalesced pages
+     */
+    public long getCoalescedCount() {
+        Porter docker = gate.getPorter(remoteAddress, null);
+        if (docker instanceof StreamPorter) {
+            return ((StreamPorter) docker).getCoalescedCount();
+        }
+        return 0;
+    }
+
     protected Departure dockerPack(byte[] payload, int priority) {
         Porter docker = gate.fetchPorter(remoteAddress, null);
         assert docker instanceof DeparturePacker : "departure packer error: " + docker;
@@ -225,7 +331,11 @@ public class GateKeeper extends Runner implements Porter.Delegate {
     }
 
     protected boolean queueAppend(ReliableMessage msg, Departure ship) {
-        return queue.append(msg, ship);
+        boolean ok = queue.append(msg, ship);
+        if (ok) {
+            wakeup();
+        }
+        return ok;
     }
 
     //
@@ -234,12 +344,22 @@ public class GateKeeper extends Runner implements Porter.Delegate {
 
     @Override
     public void onPorterStatusChanged(Porter.Status previous, Porter.Status current, Porter docker) {
-        Log.info("docker status changed: " + previous + " => " + current + ", " + docker);
+        Log.info("docker status changed: {} => {}, {}", previous, current, docker);
+        wakeup();
     }
 
     @Override
     public void onPorterReceived(Arrival ship, Porter docker) {
-        Log.debug("docker received a ship: " + ship + ", " + docker);
+        Log.debug("docker received a ship: {}, {}", ship, docker);
+    }
+
+    // NOTICE: the stream porter releases the receive buffers of the ships
+    //         after this returned, so copy the payloads before keeping them
+    @Override
+    public void onPorterReceived(List<Arrival> ships, Porter docker) {
+        for (Arrival item : ships) {
+            onPorterReceived(item, docker);
+        }
     }
 
     @Override
@@ -249,12 +369,12 @@ public class GateKeeper extends Runner implements Porter.Delegate {
 
     @Override
     public void onPorterFailed(IOError error, Departure ship, Porter docker) {
-        Log.error("docker failed to send ship: " + ship + ", " + docker);
+        Log.error("docker failed to send ship: {}, {}", ship, docker);
     }
 
     @Override
     public void onPorterError(IOError error, Departure ship, Porter docker) {
-        Log.error("docker error while sending ship: " + ship + ", " + docker);
+        Log.error("docker error while sending ship: {}, {}", ship, docker);
     }
 
 }
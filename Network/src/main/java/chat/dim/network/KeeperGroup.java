@@ -0,0 +1,90 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Event loops for gate keepers
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  A station serving lots of clients should attach the sessions here
+ *  instead of starting a thread for each of them.
+ */
+public class KeeperGroup {
+
+    private final List<KeeperLoop> loops = new ArrayList<>();
+
+    public KeeperGroup(int count) {
+        super();
+        for (int index = 0; index < count; ++index) {
+            loops.add(new KeeperLoop());
+        }
+    }
+
+    public KeeperGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public void start() {
+        for (KeeperLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public void stop() {
+        for (KeeperLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    /**
+     *  Attach the keeper to the loop with least keepers
+     *
+     * @param keeper - gate keeper not started
+     * @return loop driving the keeper
+     */
+    public KeeperLoop attach(GateKeeper keeper) {
+        KeeperLoop target = null;
+        int min = Integer.MAX_VALUE, count;
+        for (KeeperLoop loop : loops) {
+            count = loop.getKeeperCount();
+            if (count < min) {
+                min = count;
+                target = loop;
+            }
+        }
+        assert target != null : "keeper loops empty";
+        target.addKeeper(keeper);
+        return target;
+    }
+}
@@ -0,0 +1,264 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.network;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import chat.dim.daemon.Daemons;
+import chat.dim.skywalker.Runner;
+
+/**
+ *  Shared loop for gate keepers
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Drives many keepers in one thread instead of one thread for each.
+ *  Server sockets are registered to a selector, so the keepers will be
+ *  processed only when readable or busy; all keepers will be swept once
+ *  in a while for heartbeats, timeout departures and client sessions.
+ */
+public class KeeperLoop extends Runner {
+
+    /**
+     *  Every keeper will be processed at least once in this interval
+     */
+    public static long SWEEP_INTERVAL = Runner.INTERVAL_SLOW;
+
+    private final Queue<GateKeeper> newcomers = new ConcurrentLinkedQueue<>();
+    private final Queue<GateKeeper> signaled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger keeperCount = new AtomicInteger(0);
+
+    // only touched in the loop thread
+    private final List<GateKeeper> keepers = new ArrayList<>();
+    private Set<GateKeeper> busyKeepers = new HashSet<>();
+    private long nextSweep = 0;
+
+    private Selector selector = null;
+
+    public KeeperLoop() {
+        super(Runner.INTERVAL_FAST);
+    }
+
+    public int getKeeperCount() {
+        return keeperCount.get();
+    }
+
+    /**
+     *  Add a keeper to be driven by this loop,
+     *  it will be removed after stopped
+     *
+     * @param keeper - gate keeper not started
+     */
+    public void addKeeper(GateKeeper keeper) {
+        newcomers.add(keeper);
+        keeperCount.incrementAndGet();
+        wakeup();
+    }
+
+    /**
+     *  Process the keeper in next round
+     *
+     * @param keeper - gate keeper with new task
+     */
+    public void wakeup(GateKeeper keeper) {
+        signaled.add(keeper);
+        wakeup();
+    }
+
+    protected void wakeup() {
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    public void start() {
+        Thread thread = Daemons.newThread(this);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        wakeup();
+    }
+
+    @Override
+    public void setup() {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        super.setup();
+    }
+
+    @Override
+    public void finish() {
+        for (GateKeeper keeper : keepers) {
+            retire(keeper);
+        }
+        keepers.clear();
+        busyKeepers.clear();
+        Selector sel = selector;
+        if (sel != null) {
+            selector = null;
+            try {
+                sel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        super.finish();
+    }
+
+    @Override
+    protected void idle() {
+        long timeout = nextSweep - System.currentTimeMillis();
+        if (timeout <= 0) {
+            return;
+        }
+        Selector sel = selector;
+        if (sel == null) {
+            sleep(timeout);
+            return;
+        }
+        // wait for readable sockets
+        try {
+            sel.select(timeout);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean process() {
+        // 1. adopt new keepers
+        GateKeeper keeper;
+        while ((keeper = newcomers.poll()) != null) {
+            keeper.setLoop(this);
+            keeper.setup();
+            register(keeper);
+            keepers.add(keeper);
+            busyKeepers.add(keeper);
+        }
+        // 2. collect keepers which were busy, signaled or readable
+        Set<GateKeeper> targets = busyKeepers;
+        busyKeepers = new HashSet<>();
+        while ((keeper = signaled.poll()) != null) {
+            targets.add(keeper);
+        }
+        selectReady(targets);
+        // 3. sweep all keepers in a while
+        long now = System.currentTimeMillis();
+        if (now >= nextSweep) {
+            nextSweep = now + SWEEP_INTERVAL;
+            targets.addAll(keepers);
+        }
+        for (GateKeeper item : targets) {
+            if (!item.isRunning()) {
+                // keeper stopped
+                if (keepers.remove(item)) {
+                    retire(item);
+                }
+            } else if (processKeeper(item)) {
+                // still busy
+                busyKeepers.add(item);
+            }
+        }
+        return busyKeepers.size() > 0;
+    }
+
+    protected boolean processKeeper(GateKeeper keeper) {
+        try {
+            return keeper.process();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void selectReady(Set<GateKeeper> targets) {
+        Selector sel = selector;
+        if (sel == null) {
+            return;
+        }
+        try {
+            sel.selectNow();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        Iterator<SelectionKey> iterator = sel.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            targets.add((GateKeeper) iterator.next().attachment());
+            iterator.remove();
+        }
+    }
+
+    private void register(GateKeeper keeper) {
+        SocketChannel sock = keeper.getSocketChannel();
+        Selector sel = selector;
+        if (sock == null || sel == null) {
+            // client keeper will be checked when sweeping
+            return;
+        }
+        try {
+            sock.register(sel, SelectionKey.OP_READ, keeper);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void retire(GateKeeper keeper) {
+        SocketChannel sock = keeper.getSocketChannel();
+        Selector sel = selector;
+        if (sock != null && sel != null) {
+            SelectionKey key = sock.keyFor(sel);
+            if (key != null) {
+                key.cancel();
+            }
+        }
+        keeper.finish();
+        keeper.setLoop(null);
+        keeperCount.decrementAndGet();
+    }
+}
@@ -30,11 +30,13 @@
  */
 package chat.dim.queue;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -46,95 +48,199 @@ import chat.dim.protocol.ReliableMessage;
 
 public final class MessageQueue {
 
-    private final List<Integer> priorities = new ArrayList<>();
-    private final Map<Integer, List<MessageWrapper>> fleets = new HashMap<>();
+    /**
+     *  Default limits for new queues, 0 means unlimited
+     */
+    public static int MAX_MESSAGES = 0;
+    public static long MAX_BYTES = 0;
+    public static Overflow OVERFLOW = Overflow.DROP_OLDEST;
+
+    // priority => wrappers, smaller priority first
+    private final TreeMap<Integer, ArrayDeque<MessageWrapper>> fleets = new TreeMap<>();
+    // 'signature:receiver' => wrapper, for checking duplicated
+    private final Map<String, MessageWrapper> index = new HashMap<>();
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+    // modified within the write lock only
+    private volatile int count = 0;
+    private volatile long bytes = 0;
+
+    private final int maxMessages;
+    private final long maxBytes;
+    private final Overflow overflow;
+
+    private Delegate delegate = null;
+
+    public MessageQueue(int maxCount, long maxSize, Overflow policy) {
+        super();
+        maxMessages = maxCount;
+        maxBytes = maxSize;
+        overflow = policy;
+    }
+
+    public MessageQueue() {
+        this(MAX_MESSAGES, MAX_BYTES, OVERFLOW);
+    }
+
+    public void setDelegate(Delegate spiller) {
+        delegate = spiller;
+    }
+
+    /**
+     *  Get count of queued messages
+     *
+     * @return count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     *  Get total size of the queued departure ships
+     *
+     * @return bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
     /**
      *  Append message with departure ship
      *
      * @param rMsg - outgoing message
      * @param ship - departure ship
-     * @return false on duplicated
+     * @return false on duplicated or queue full
      */
     public boolean append(ReliableMessage rMsg, Departure ship) {
-        boolean ok = true;
+        MessageWrapper wrapper = new MessageWrapper(rMsg, ship);
+        int priority = ship.getPriority();
+        List<MessageWrapper> overflowed = new ArrayList<>();
         Lock writeLock = lock.writeLock();
         writeLock.lock();
         try {
-            // 1. choose an array with priority
-            int priority = ship.getPriority();
-            List<MessageWrapper> array = fleets.get(priority);
-            if (array == null) {
-                // 1.1. create new array for this priority
-                array = new ArrayList<>();
-                fleets.put(priority, array);
-                // 1.2. insert the priority in a sorted list
-                insert(priority);
-            } else {
-                // 1.3. check duplicated
-                Object signature = rMsg.get("signature");
-                assert signature != null : "signature not found: " + rMsg;
-                ReliableMessage item;
-                for (MessageWrapper wrapper : array) {
-                    item = wrapper.getMessage();
-                    if (isDuplicated(item, rMsg)) {
-                        Log.warning("[QUEUE] duplicated message: " + signature);
-                        ok = false;
+            // 1. check duplicated
+            String key = getIndexKey(rMsg);
+            if (key != null && index.containsKey(key)) {
+                Log.warning("[QUEUE] duplicated message: {}", key);
+                return false;
+            }
+            // 2. check limits
+            if (isFull(wrapper.getLength())) {
+                if (overflow == Overflow.REJECT || !canEvict(priority, wrapper.getLength())) {
+                    Log.warning("[QUEUE] queue full, reject message: {}", key);
+                    return false;
+                }
+                // remove the oldest messages with the lowest priority
+                MessageWrapper oldest;
+                while (count > 0 && isFull(wrapper.getLength())) {
+                    oldest = removeLast();
+                    if (oldest == null) {
                         break;
                     }
+                    overflowed.add(oldest);
                 }
             }
-            if (ok) {
-                // 2. append with wrapper
-                MessageWrapper wrapper = new MessageWrapper(rMsg, ship);
-                array.add(wrapper);
+            // 3. append with wrapper
+            ArrayDeque<MessageWrapper> array = fleets.get(priority);
+            if (array == null) {
+                array = new ArrayDeque<>();
+                fleets.put(priority, array);
+            }
+            array.addLast(wrapper);
+            if (key != null) {
+                index.put(key, wrapper);
             }
+            count += 1;
+            bytes += wrapper.getLength();
         } finally {
             writeLock.unlock();
         }
-        return ok;
+        // 4. spill the overflowed messages
+        for (MessageWrapper item : overflowed) {
+            spill(item);
+        }
+        return true;
+    }
+
+    // check whether enough space can be freed by evicting messages
+    // with priority not higher than the new one
+    private boolean canEvict(int priority, int length) {
+        int restCount = count;
+        long restBytes = bytes;
+        for (ArrayDeque<MessageWrapper> array : fleets.tailMap(priority, true).values()) {
+            for (MessageWrapper item : array) {
+                if (!isFull(restCount, restBytes, length)) {
+                    return true;
+                }
+                restCount -= 1;
+                restBytes -= item.getLength();
+            }
+        }
+        return !isFull(restCount, restBytes, length);
+    }
+
+    private boolean isFull(int length) {
+        return isFull(count, bytes, length);
+    }
+
+    private boolean isFull(int queued, long size, int length) {
+        if (maxMessages > 0 && queued + 1 > maxMessages) {
+            return true;
+        }
+        return maxBytes > 0 && size + length > maxBytes;
     }
-    private boolean isDuplicated(ReliableMessage msg1, ReliableMessage msg2) {
-        if (msg1 == null || msg2 == null) {
-            return false;
+
+    private void spill(MessageWrapper wrapper) {
+        Delegate spiller = delegate;
+        ReliableMessage msg = wrapper.getMessage();
+        if (overflow == Overflow.SPILL && spiller != null) {
+            spiller.spillMessage(msg, wrapper.getPriority());
+        } else {
+            Log.warning("[QUEUE] queue full, drop message: {}", getIndexKey(msg));
         }
-        Object sig1 = msg1.get("signature");
-        Object sig2 = msg2.get("signature");
-        if (sig1 == null || sig2 == null) {
-            assert false : "signature should not empty here: " + msg1 + ", " + msg2;
-            return false;
-        } else if (!sig1.equals(sig2)) {
-            return false;
+    }
+
+    // 'signature:receiver'
+    private static String getIndexKey(ReliableMessage msg) {
+        if (msg == null) {
+            return null;
         }
+        Object signature = msg.get("signature");
         // maybe it's a group message split for every members,
         // so we still need to check receiver here.
-        ID to1 = msg1.getReceiver();
-        ID to2 = msg2.getReceiver();
-        if (to1 == null || to2 == null) {
-            assert false : "receiver should not empty here: " + msg1 + ", " + msg2;
-            return false;
+        ID receiver = msg.getReceiver();
+        if (signature == null || receiver == null) {
+            assert false : "signature/receiver should not empty here: " + msg;
+            return null;
         }
-        return to1.equals(to2);
-    }
-    private void insert(int priority) {
-        int total = priorities.size();
-        int index = 0, value;
-        // seeking position for new priority
-        for (; index < total; ++index) {
-            value = priorities.get(index);
-            if (value == priority) {
-                // duplicated
-                return;
-            } else if (value > priority) {
-                // got it
-                break;
-            }
-            // current value is smaller than the new value,
-            // keep going
+        return signature + ":" + receiver;
+    }
+
+    // remove the oldest wrapper with the lowest priority
+    private MessageWrapper removeLast() {
+        Map.Entry<Integer, ArrayDeque<MessageWrapper>> entry = fleets.lastEntry();
+        while (entry != null && entry.getValue().isEmpty()) {
+            fleets.remove(entry.getKey());
+            entry = fleets.lastEntry();
         }
-        // insert new value before the bigger one
-        priorities.add(index, priority);
+        if (entry == null) {
+            return null;
+        }
+        return detach(entry.getValue().pollFirst());
+    }
+
+    // remove the wrapper from index & counters
+    private MessageWrapper detach(MessageWrapper wrapper) {
+        if (wrapper == null) {
+            return null;
+        }
+        String key = getIndexKey(wrapper.getMessage());
+        if (key != null && index.get(key) == wrapper) {
+            index.remove(key);
+        }
+        count -= 1;
+        bytes -= wrapper.getLength();
+        return wrapper;
     }
 
     /**
@@ -147,11 +253,11 @@ public final class MessageQueue {
         Lock writeLock = lock.writeLock();
         writeLock.lock();
         try {
-            for (int priority : priorities) {
+            for (ArrayDeque<MessageWrapper> array : fleets.values()) {
                 // get first task
-                List<MessageWrapper> array = fleets.get(priority);
-                if (array != null && array.size() > 0) {
-                    target = array.remove(0);
+                target = array.pollFirst();
+                if (target != null) {
+                    detach(target);
                     break;
                 }
             }
@@ -161,27 +267,76 @@ public final class MessageQueue {
         return target;
     }
 
+    /**
+     *  Get next new messages in priority order,
+     *  while the total size of them is not exceeded
+     *
+     *  Each message is still pushed to the porter as its own departure,
+     *  so it keeps its own SN and retry state; the porter writes the pages
+     *  ready in one turn together.
+     *
+     * @param limit - size limit, the first message is always taken
+     * @return MessageWrappers, empty if no more message
+     */
+    public List<MessageWrapper> next(long limit) {
+        List<MessageWrapper> targets = new ArrayList<>();
+        long total = 0;
+        MessageWrapper item;
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            for (ArrayDeque<MessageWrapper> array : fleets.values()) {
+                while ((item = array.peekFirst()) != null) {
+                    if (targets.size() > 0 && total + item.getLength() > limit) {
+                        return targets;
+                    }
+                    targets.add(detach(array.pollFirst()));
+                    total += item.getLength();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return targets;
+    }
+
     public void purge() {
         Lock writeLock = lock.writeLock();
         writeLock.lock();
         try {
-            Iterator<Integer> pit = priorities.iterator();
-            int prior;
-            List<MessageWrapper> array;
-            while (pit.hasNext()) {
-                prior = pit.next();
-                array = fleets.get(prior);
-                if (array == null) {
-                    // this priority is empty
-                    pit.remove();
-                } else if (array.size() == 0) {
+            Iterator<ArrayDeque<MessageWrapper>> iterator = fleets.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isEmpty()) {
                     // this priority is empty
-                    fleets.remove(prior);
-                    pit.remove();
+                    iterator.remove();
                 }
             }
         } finally {
             writeLock.unlock();
         }
     }
+
+    /**
+     *  Policy when the queue is full
+     */
+    public enum Overflow {
+        DROP_OLDEST,  // drop the oldest message with the lowest priority (not higher than the new one)
+        REJECT,       // refuse the new message
+        SPILL,        // hand the oldest message to the delegate
+    }
+
+    /**
+     *  Delegate for saving overflowed messages
+     */
+    public interface Delegate {
+
+        /**
+         *  Save the message out of memory, it will be re-sent by the
+         *  application later (e.g. after the session reconnected)
+         *
+         * @param msg      - overflowed message
+         * @param priority - message priority
+         */
+        void spillMessage(ReliableMessage msg, int priority);
+    }
 }
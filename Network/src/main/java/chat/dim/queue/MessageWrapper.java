@@ -41,17 +41,33 @@ public final class MessageWrapper implements Departure {
 
     private final ReliableMessage msg;
     private final Departure ship;
+    private final int length;  // size of all fragments when created
 
     public MessageWrapper(ReliableMessage rMsg, Departure departure) {
         super();
         msg = rMsg;
         ship = departure;
+        length = countLength(departure.getFragments());
+    }
+
+    private static int countLength(List<byte[]> fragments) {
+        int total = 0;
+        if (fragments != null) {
+            for (byte[] fra : fragments) {
+                total += fra.length;
+            }
+        }
+        return total;
     }
 
     public ReliableMessage getMessage() {
         return msg;
     }
 
+    public int getLength() {
+        return length;
+    }
+
     @Override
     public Object getSN() {
         return ship.getSN();
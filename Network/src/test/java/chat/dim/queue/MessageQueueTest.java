@@ -0,0 +1,222 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.queue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import chat.dim.port.Arrival;
+import chat.dim.port.Departure;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.ReliableMessage;
+
+public class MessageQueueTest {
+
+    static final int URGENT = -1;
+    static final int NORMAL = 0;
+    static final int SLOWER = 1;
+
+    @Test
+    public void testDropOldest() {
+        MessageQueue queue = new MessageQueue(2, 0, MessageQueue.Overflow.DROP_OLDEST);
+        Assert.assertTrue(queue.append(message("a"), new Ship(NORMAL, 10)));
+        Assert.assertTrue(queue.append(message("b"), new Ship(NORMAL, 10)));
+        Assert.assertTrue(queue.append(message("c"), new Ship(NORMAL, 10)));
+        Assert.assertEquals(2, queue.getCount());
+        Assert.assertEquals(20, queue.getBytes());
+        Assert.assertEquals("b", signature(queue.next()));
+        Assert.assertEquals("c", signature(queue.next()));
+        Assert.assertNull(queue.next());
+    }
+
+    @Test
+    public void testDropOldestKeepsHigherPriority() {
+        MessageQueue queue = new MessageQueue(2, 0, MessageQueue.Overflow.DROP_OLDEST);
+        Assert.assertTrue(queue.append(message("a"), new Ship(URGENT, 10)));
+        Assert.assertTrue(queue.append(message("b"), new Ship(SLOWER, 10)));
+        // the slower one is evicted for a normal message
+        Assert.assertTrue(queue.append(message("c"), new Ship(NORMAL, 10)));
+        // nothing can be evicted for another slower message
+        Assert.assertFalse(queue.append(message("d"), new Ship(SLOWER, 10)));
+        Assert.assertEquals(2, queue.getCount());
+        Assert.assertEquals("a", signature(queue.next()));
+        Assert.assertEquals("c", signature(queue.next()));
+    }
+
+    @Test
+    public void testDropOldestByBytes() {
+        MessageQueue queue = new MessageQueue(0, 100, MessageQueue.Overflow.DROP_OLDEST);
+        Assert.assertTrue(queue.append(message("a"), new Ship(NORMAL, 40)));
+        Assert.assertTrue(queue.append(message("b"), new Ship(NORMAL, 40)));
+        Assert.assertTrue(queue.append(message("c"), new Ship(NORMAL, 60)));
+        Assert.assertEquals(2, queue.getCount());
+        Assert.assertEquals(100, queue.getBytes());
+        Assert.assertEquals("b", signature(queue.next()));
+        // too big to fit even if the queue is empty
+        Assert.assertFalse(queue.append(message("d"), new Ship(NORMAL, 120)));
+        Assert.assertEquals(1, queue.getCount());
+    }
+
+    @Test
+    public void testReject() {
+        MessageQueue queue = new MessageQueue(1, 0, MessageQueue.Overflow.REJECT);
+        Assert.assertTrue(queue.append(message("a"), new Ship(SLOWER, 10)));
+        Assert.assertFalse(queue.append(message("b"), new Ship(URGENT, 10)));
+        Assert.assertEquals(1, queue.getCount());
+        Assert.assertEquals("a", signature(queue.next()));
+    }
+
+    @Test
+    public void testSpill() {
+        MessageQueue queue = new MessageQueue(1, 0, MessageQueue.Overflow.SPILL);
+        List<String> spilled = new ArrayList<>();
+        queue.setDelegate((msg, priority) -> spilled.add(signature(msg) + "@" + priority));
+        Assert.assertTrue(queue.append(message("a"), new Ship(NORMAL, 10)));
+        Assert.assertTrue(queue.append(message("b"), new Ship(NORMAL, 10)));
+        Assert.assertEquals(1, spilled.size());
+        Assert.assertEquals("a@" + NORMAL, spilled.get(0));
+        Assert.assertEquals("b", signature(queue.next()));
+    }
+
+    @Test
+    public void testDuplicated() {
+        MessageQueue queue = new MessageQueue();
+        Assert.assertTrue(queue.append(message("a"), new Ship(NORMAL, 10)));
+        Assert.assertFalse(queue.append(message("a"), new Ship(NORMAL, 10)));
+        Assert.assertEquals(1, queue.getCount());
+        // dequeued message can be appended again
+        Assert.assertNotNull(queue.next());
+        Assert.assertTrue(queue.append(message("a"), new Ship(NORMAL, 10)));
+    }
+
+    @Test
+    public void testNextWithLimit() {
+        MessageQueue queue = new MessageQueue();
+        queue.append(message("a"), new Ship(NORMAL, 30));
+        queue.append(message("b"), new Ship(URGENT, 30));
+        queue.append(message("c"), new Ship(NORMAL, 30));
+        queue.append(message("d"), new Ship(NORMAL, 30));
+        List<MessageWrapper> wrappers = queue.next(70);
+        Assert.assertEquals(2, wrappers.size());
+        Assert.assertEquals("b", signature(wrappers.get(0).getMessage()));
+        Assert.assertEquals("a", signature(wrappers.get(1).getMessage()));
+        // the first one is always taken
+        wrappers = queue.next(10);
+        Assert.assertEquals(1, wrappers.size());
+        Assert.assertEquals("c", signature(wrappers.get(0).getMessage()));
+        Assert.assertEquals(1, queue.getCount());
+        Assert.assertEquals(30, queue.getBytes());
+    }
+
+    //
+    //  Stubs
+    //
+
+    private static String signature(MessageWrapper wrapper) {
+        return wrapper == null ? null : signature(wrapper.getMessage());
+    }
+
+    private static String signature(ReliableMessage msg) {
+        return (String) msg.get("signature");
+    }
+
+    private static ReliableMessage message(String signature) {
+        ID receiver = (ID) Proxy.newProxyInstance(ID.class.getClassLoader(), new Class<?>[]{ID.class},
+                (proxy, method, args) -> "toString".equals(method.getName()) ? "moky@anywhere" : null);
+        return (ReliableMessage) Proxy.newProxyInstance(ReliableMessage.class.getClassLoader(),
+                new Class<?>[]{ReliableMessage.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return "signature".equals(args[0]) ? signature : null;
+                        case "getReceiver":
+                            return receiver;
+                        case "toString":
+                            return signature;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    static class Ship implements Departure {
+
+        private final int priority;
+        private final List<byte[]> fragments = new ArrayList<>();
+
+        Ship(int prior, int size) {
+            priority = prior;
+            fragments.add(new byte[size]);
+        }
+
+        @Override
+        public Object getSN() {
+            return this;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public List<byte[]> getFragments() {
+            return fragments;
+        }
+
+        @Override
+        public boolean checkResponse(Arrival response) {
+            return false;
+        }
+
+        @Override
+        public boolean isImportant() {
+            return true;
+        }
+
+        @Override
+        public void touch(Date now) {
+        }
+
+        @Override
+        public Status getStatus(Date now) {
+            return Status.NEW;
+        }
+    }
+}
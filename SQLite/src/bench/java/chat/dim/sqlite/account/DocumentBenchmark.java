@@ -0,0 +1,241 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite.account;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLConditions;
+import chat.dim.sqlite.DataRowExtractor;
+import chat.dim.sqlite.DataTableHandler;
+import chat.dim.sqlite.DatabaseConnector;
+
+/**
+ *  Document Table Benchmark
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Fills 't_document' with legacy rows (1,000,000 by default), then times
+ *  on a fresh copy of the legacy (or migrated) table for each:
+ *      1. the old save path (SELECT by did, then UPDATE or INSERT) without index;
+ *      2. the migration of 'DocumentTable' (dedupe + unique index on (did, type));
+ *      3. the old save path with index;
+ *      4. the save path of 'DocumentTable' (upsert, and remove the legacy row).
+ *
+ *  All statements run through 'DatabaseConnector' (cached prepared statements),
+ *  committed synchronously.
+ *
+ *  Usage:
+ *      gradle bench [-Prows=1000000]
+ */
+public final class DocumentBenchmark extends DataTableHandler<String> {
+
+    private static final String[] TYPE_COLUMNS = {"type"};
+    private static final String[] INSERT_COLUMNS = {"did", "type", "data", "signature"};
+
+    private static final int SAVES = 200;
+
+    private DocumentBenchmark(DatabaseConnector connector) {
+        super(connector);
+    }
+
+    @Override
+    protected DataRowExtractor<String> getDataRowExtractor() {
+        return (resultSet, index) -> resultSet.getString("type");
+    }
+
+    // the old save path, before the unique index
+    private boolean oldSave(String did, String data, String signature) {
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "did", "=", did);
+        List<String> types = select(DocumentTable.T_DOCUMENT, TYPE_COLUMNS, conditions,
+                null, null, "id DESC", -1, 0);
+        if (types == null) {
+            // db error
+            return false;
+        }
+        if (types.contains("")) {
+            conditions.addCondition(SQLConditions.Relation.AND, "type", "=", "");
+            Map<String, Object> values = new HashMap<>();
+            values.put("data", data);
+            values.put("signature", signature);
+            return update(DocumentTable.T_DOCUMENT, values, conditions) >= 0;
+        }
+        Object[] values = {did, "", data, signature};
+        return insert(DocumentTable.T_DOCUMENT, INSERT_COLUMNS, values) >= 0;
+    }
+
+    public static void main(String[] args) throws SQLException, IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        // commit each save before timing the next one
+        DatabaseConnector.WRITE_BEHIND = false;
+        File dir = new File(System.getProperty("java.io.tmpdir"), "document_bench");
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("failed to create directory: " + dir);
+        }
+        File legacy = new File(dir, "legacy.db");
+        File migrated = new File(dir, "migrated.db");
+        File variant = new File(dir, "variant.db");
+        delete(legacy);
+        fill(legacy, rows);
+
+        String[] ids = new String[SAVES];
+        Random random = new Random(2026);
+        for (int i = 0; i < SAVES; ++i) {
+            ids[i] = "user" + random.nextInt(rows) + "@address";
+        }
+        String data = repeat('y', 200);
+        String signature = repeat('s', 88);
+        System.out.printf("rows: %d, saves: %d%n", rows, SAVES);
+
+        DatabaseConnector connector;
+        DocumentBenchmark bench;
+        DocumentTable table;
+        long start;
+
+        // 1. old save, no index
+        copy(legacy, variant);
+        connector = new DatabaseConnector(variant.getPath());
+        bench = new DocumentBenchmark(connector);
+        start = System.nanoTime();
+        for (String did : ids) {
+            check(bench.oldSave(did, data, signature));
+        }
+        System.out.printf("old save, no index : %8.3f ms/save%n", (System.nanoTime() - start) / 1e6 / SAVES);
+        connector.destroy();
+
+        // 2. migration
+        copy(legacy, variant);
+        connector = new DatabaseConnector(variant.getPath());
+        table = new DocumentTable(connector);
+        start = System.nanoTime();
+        check(table.prepareTable());
+        System.out.printf("migration          : %8.1f s%n", (System.nanoTime() - start) / 1e9);
+        connector.destroy();
+        copy(variant, migrated);
+
+        // 3. old save, indexed
+        copy(migrated, variant);
+        connector = new DatabaseConnector(variant.getPath());
+        bench = new DocumentBenchmark(connector);
+        start = System.nanoTime();
+        for (String did : ids) {
+            check(bench.oldSave(did, data, signature));
+        }
+        System.out.printf("old save, indexed  : %8.3f ms/save%n", (System.nanoTime() - start) / 1e6 / SAVES);
+        connector.destroy();
+
+        // 4. upsert, indexed
+        copy(migrated, variant);
+        connector = new DatabaseConnector(variant.getPath());
+        table = new DocumentTable(connector);
+        // migrated already
+        check(table.prepareTable());
+        start = System.nanoTime();
+        for (String did : ids) {
+            check(table.save(did, "visa", data, signature, true));
+        }
+        System.out.printf("upsert, indexed    : %8.3f ms/save%n", (System.nanoTime() - start) / 1e6 / SAVES);
+        connector.destroy();
+
+        delete(variant);
+        delete(migrated);
+        delete(legacy);
+    }
+
+    private static void check(boolean ok) {
+        if (!ok) {
+            throw new IllegalStateException("db error");
+        }
+    }
+
+    private static String repeat(char ch, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, ch);
+        return new String(chars);
+    }
+
+    private static final String[] SUFFIXES = {"", "-wal", "-shm"};
+
+    private static void delete(File file) throws IOException {
+        for (String suffix : SUFFIXES) {
+            Files.deleteIfExists(new File(file.getPath() + suffix).toPath());
+        }
+    }
+
+    private static void copy(File src, File dst) throws IOException {
+        delete(dst);
+        File from;
+        for (String suffix : SUFFIXES) {
+            from = new File(src.getPath() + suffix);
+            if (from.exists()) {
+                Files.copy(from.toPath(), new File(dst.getPath() + suffix).toPath());
+            }
+        }
+    }
+
+    // legacy rows: NULL type, no index
+    private static void fill(File file, int rows) throws SQLException {
+        String data = repeat('x', 200);
+        String signature = repeat('s', 88);
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            try (Statement stat = conn.createStatement()) {
+                stat.execute(SQLBuilder.buildCreateTable(DocumentTable.T_DOCUMENT, DocumentTable.FIELDS));
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement stat = conn.prepareStatement("INSERT INTO " + DocumentTable.T_DOCUMENT +
+                    " (did, type, data, signature) VALUES (?, NULL, ?, ?)")) {
+                for (int i = 0; i < rows; ++i) {
+                    stat.setString(1, "user" + i + "@address");
+                    stat.setString(2, data);
+                    stat.setString(3, signature);
+                    stat.addBatch();
+                    if (i % 10000 == 9999) {
+                        stat.executeBatch();
+                    }
+                }
+                stat.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+}
@@ -30,6 +30,8 @@
  */
 package chat.dim.database;
 
+import java.util.List;
+
 import chat.dim.crypto.PlainKey;
 import chat.dim.dbi.CipherKeyDBI;
 import chat.dim.mem.CacheManager;
@@ -39,17 +41,47 @@ import chat.dim.protocol.ID;
 import chat.dim.protocol.SymmetricAlgorithms;
 import chat.dim.protocol.SymmetricKey;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.sqlite.message.CipherKeyTable;
+import chat.dim.type.Triplet;
 
 public class CipherKeyDatabase implements CipherKeyDBI {
 
+    private final CipherKeyTable cipherKeyTable;
+
     private final CachePool<String, SymmetricKey> keyCache;
 
     public CipherKeyDatabase(DatabaseConnector sqliteConnector) {
         super();
+        cipherKeyTable = new CipherKeyTable(sqliteConnector);
         CacheManager man = CacheManager.getInstance();
         keyCache = man.getPool("cipher_key");
     }
 
+    /**
+     *  Load the cipher keys of last 7 days into memory cache,
+     *  call it once at startup instead of querying key by key
+     *
+     *  NOTICE: nothing in this module calls it, the application should call
+     *          it once after creating the database, before serving messages
+     *
+     * @return false on DB error
+     */
+    public boolean preload() {
+        long now = System.currentTimeMillis();
+        List<Triplet<ID, ID, SymmetricKey>> keys = cipherKeyTable.loadCipherKeys(now / 1000 - 7*24*3600);
+        if (keys == null) {
+            // db error
+            return false;
+        }
+        for (Triplet<ID, ID, SymmetricKey> item : keys) {
+            if (item.first == null || item.second == null || item.third == null) {
+                continue;
+            }
+            keyCache.update(item.first + "->" + item.second, item.third, 7*24*3600*1000, now);
+        }
+        return true;
+    }
+
     @Override
     public SymmetricKey getCipherKey(ID sender, ID receiver, boolean generate) {
         if (receiver.isBroadcast()) {
@@ -57,18 +89,28 @@ public class CipherKeyDatabase implements CipherKeyDBI {
         }
         long now = System.currentTimeMillis();
         CachePair<SymmetricKey> pair = keyCache.fetch(sender + "->" + receiver, now);
-        SymmetricKey key = pair == null ? null : pair.value;
+        SymmetricKey key;
+        if (pair == null) {
+            // cache not found, load from sqlite
+            key = cipherKeyTable.getCipherKey(sender, receiver, false);
+            keyCache.update(sender + "->" + receiver, key, 7*24*3600*1000, now);
+        } else {
+            key = pair.value;
+        }
         if (key == null && generate) {
             // generate and cache it
             key = SymmetricKey.generate(SymmetricAlgorithms.AES);
             assert key != null : "failed to generate symmetric key";
-            keyCache.update(sender + "->" + receiver, key, 7*24*3600*1000, now);
+            cacheCipherKey(sender, receiver, key);
         }
         return key;
     }
 
     @Override
     public void cacheCipherKey(ID sender, ID receiver, SymmetricKey key) {
+        // 1. update memory cache
         keyCache.update(sender + "->" + receiver, key, 7*24*3600*1000, 0);
+        // 2. update sqlite
+        cipherKeyTable.cacheCipherKey(sender, receiver, key);
     }
 }
@@ -30,13 +30,15 @@
  */
 package chat.dim.database;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.dbi.DocumentDBI;
-import chat.dim.mem.CacheHolder;
 import chat.dim.mem.CacheManager;
-import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
+import chat.dim.mem.EntityCodec;
+import chat.dim.mem.EntityWeigher;
+import chat.dim.mem.OffHeapTier;
 import chat.dim.protocol.Document;
 import chat.dim.protocol.ID;
 import chat.dim.sqlite.DatabaseConnector;
@@ -53,8 +55,22 @@ public class DocumentDatabase implements DocumentDBI {
         documentTable = new DocumentTable(sqliteConnector);
         CacheManager man = CacheManager.getInstance();
         documentCache = man.getPool("document");
+        documentCache.setCapacity(CACHE_CAPACITY, EntityWeigher.INSTANCE);
+        if (OFF_HEAP_CAPACITY > 0) {
+            documentCache.setSecondTier(new OffHeapTier<>(OFF_HEAP_CAPACITY, EntityCodec.DOCUMENTS));
+        }
     }
 
+    /**
+     *  Max size of the cached documents, 0 means unbounded
+     */
+    public static long CACHE_CAPACITY = 32 * 1024 * 1024;  // 32 MB
+
+    /**
+     *  Size of the off-heap tier for the documents evicted from memory, 0 means disabled
+     */
+    public static long OFF_HEAP_CAPACITY = 0;
+
     //
     //  Document DBI
     //
@@ -63,42 +79,45 @@ public class DocumentDatabase implements DocumentDBI {
     public boolean saveDocument(Document doc, ID entity) {
         // TODO: must check old records before calling this
         assert entity.equals(doc.get("did")) : " document ID not matched: " + entity + ", " + doc;
-        // 1. clear for reload
-        documentCache.erase(entity, 0);
-        // 2. update sqlite
-        return documentTable.saveDocument(doc, entity);
+        // same as the table, document without type is taken as the default type
+        String type = DocumentTable.getDocumentType(doc, entity);
+        boolean[] ok = {false};
+        // pinned until the sqlite committed, so it won't be reloaded stale
+        documentCache.pin(entity);
+        try {
+            // update memory cache and sqlite with the entry locked,
+            // so saving documents with different types won't lose any one
+            documentCache.compute(entity, (identifier, old) -> {
+                // 1. update sqlite, it may be written behind
+                ok[0] = documentTable.saveDocument(doc, entity);
+                if (old == null || !old.isAlive(System.currentTimeMillis())) {
+                    // not cached, the documents will be loaded when needed
+                    return null;
+                } else if (!ok[0]) {
+                    // db error, keep the old records
+                    return old.getValue();
+                }
+                // 2. update memory cache
+                List<Document> documents = old.getValue() == null ? new ArrayList<>() : new ArrayList<>(old.getValue());
+                for (int index = 0; index < documents.size(); ++index) {
+                    if (type.equals(DocumentTable.getDocumentType(documents.get(index), entity))) {
+                        documents.set(index, doc);
+                        return documents;
+                    }
+                }
+                // newest first
+                documents.add(0, doc);
+                return documents;
+            }, 36000 * 1000);
+            return ok[0];
+        } finally {
+            documentTable.afterCommitted(() -> documentCache.unpin(entity));
+        }
     }
 
     @Override
     public List<Document> getDocuments(ID entity) {
-        long now = System.currentTimeMillis();
-        List<Document> documents = null;
-        CacheHolder<List<Document>> holder = null;
-        // 1. check memory cache
-        CachePair<List<Document>> pair = documentCache.fetch(entity, now);
-        if (pair != null) {
-            documents = pair.value;
-            holder = pair.holder;
-        }
-        if (documents == null) {
-            // cache empty
-            if (holder == null) {
-                // document not load yet, wait to load
-                documentCache.update(entity, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // document not exists
-                    return null;
-                }
-                // document expired, wait to reload
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            documents = documentTable.getDocuments(entity);
-            // update memory cache
-            documentCache.update(entity, documents, 36000 * 1000, now);
-        }
-        // OK, return cached value
-        return documents;
+        // check memory cache, load from sqlite when missed
+        return documentCache.get(entity, documentTable::getDocuments, 36000 * 1000, 36000 * 1000);
     }
 }
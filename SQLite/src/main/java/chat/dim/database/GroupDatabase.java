@@ -32,11 +32,10 @@ package chat.dim.database;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import chat.dim.dbi.GroupDBI;
-import chat.dim.mem.CacheHolder;
 import chat.dim.mem.CacheManager;
-import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
 import chat.dim.protocol.ID;
 import chat.dim.sqlite.DatabaseConnector;
@@ -49,6 +48,7 @@ public class GroupDatabase implements GroupDBI {
     private final CachePool<ID, ID> founderCache;
     private final CachePool<ID, ID> ownerCache;
     private final CachePool<ID, List<ID>> membersCache;
+    private final CachePool<ID, List<ID>> adminsCache;
 
     public GroupDatabase(DatabaseConnector sqliteConnector) {
         super();
@@ -57,6 +57,37 @@ public class GroupDatabase implements GroupDBI {
         founderCache    = man.getPool("founder");
         ownerCache      = man.getPool("owner");
         membersCache    = man.getPool("members");
+        adminsCache     = man.getPool("administrators");
+    }
+
+    /**
+     *  Load members & administrators of all groups into memory cache,
+     *  call it once at startup instead of querying group by group
+     *
+     *  NOTICE: nothing in this module calls it, the application should call
+     *          it once after creating the database, before serving messages
+     *
+     * @return false on DB error
+     */
+    public boolean preload() {
+        long now = System.currentTimeMillis();
+        Map<ID, List<ID>> members = groupTable.loadAllMembers();
+        if (members == null) {
+            // db error
+            return false;
+        }
+        for (Map.Entry<ID, List<ID>> entry : members.entrySet()) {
+            membersCache.update(entry.getKey(), entry.getValue(), 3600 * 1000, now);
+        }
+        Map<ID, List<ID>> admins = groupTable.loadAllAdministrators();
+        if (admins == null) {
+            // db error
+            return false;
+        }
+        for (Map.Entry<ID, List<ID>> entry : admins.entrySet()) {
+            adminsCache.update(entry.getKey(), entry.getValue(), 3600 * 1000, now);
+        }
+        return true;
     }
 
     //
@@ -65,139 +96,53 @@ public class GroupDatabase implements GroupDBI {
 
     @Override
     public ID getFounder(ID group) {
-        long now = System.currentTimeMillis();
-        ID value = null;
-        CacheHolder<ID> holder = null;
-        // 1. check memory cache
-        CachePair<ID> pair = founderCache.fetch(group, now);
-        if (pair != null) {
-            value = pair.value;
-            holder = pair.holder;
-        }
-        if (value == null) {
-            // cache empty
-            if (holder == null) {
-                // cache not load yet, wait to load
-                founderCache.update(group, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // cache not exists
-                    return null;
-                }
-                // cache expired, wait to load
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            value = groupTable.getFounder(group);
-            if (value == null) {
-                // placeholder
-                value = ID.FOUNDER;
-            }
-            // update memory cache
-            founderCache.update(group, value, 36000 * 1000, now);
-        } else if (value.isBroadcast()) {
-            // placeholder
-            value = null;
-        }
-        // OK, return cached value
-        return value;
+        return founderCache.get(group, groupTable::getFounder, 36000 * 1000, 36000 * 1000);
     }
 
     @Override
     public ID getOwner(ID group) {
-        long now = System.currentTimeMillis();
-        ID value = null;
-        CacheHolder<ID> holder = null;
-        // 1. check memory cache
-        CachePair<ID> pair = ownerCache.fetch(group, now);
-        if (pair != null) {
-            value = pair.value;
-            holder = pair.holder;
-        }
-        if (value == null) {
-            // cache empty
-            if (holder == null) {
-                // cache not load yet, wait to load
-                ownerCache.update(group, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // cache not exists
-                    return null;
-                }
-                // cache expired, wait to load
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            value = groupTable.getOwner(group);
-            if (value == null) {
-                // placeholder
-                value = ID.ANYONE;
-            }
-            // update memory cache
-            ownerCache.update(group, value, 3600 * 1000, now);
-        } else if (value.isBroadcast()) {
-            // placeholder
-            value = null;
-        }
-        // OK, return cached value
-        return value;
+        return ownerCache.get(group, groupTable::getOwner, 3600 * 1000, 3600 * 1000);
     }
 
     @Override
     public List<ID> getMembers(ID group) {
-        long now = System.currentTimeMillis();
-        List<ID> value = null;
-        CacheHolder<List<ID>> holder = null;
-        // 1. check memory cache
-        CachePair<List<ID>> pair = membersCache.fetch(group, now);
-        if (pair != null) {
-            value = pair.value;
-            holder = pair.holder;
-        }
-        if (value == null) {
-            // cache empty
-            if (holder == null) {
-                // cache not load yet, wait to load
-                membersCache.update(group, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // cache not exists
-                    return new ArrayList<>();
-                }
-                // cache expired, wait to load
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            value = groupTable.getMembers(group);
-            if (value == null) {
-                // placeholder
-                value = new ArrayList<>();
-            }
-            // update memory cache
-            membersCache.update(group, value, 3600 * 1000, now);
-        }
-        // OK, return cached value
-        return value;
+        List<ID> members = membersCache.get(group, groupTable::getMembers, 3600 * 1000, 3600 * 1000);
+        return members == null ? new ArrayList<>() : members;
     }
 
     @Override
     public boolean saveMembers(List<ID> members, ID group) {
         long now = System.currentTimeMillis();
-        // 1. update memory cache
-        membersCache.update(group, members, 3600 * 1000, now);
-        // 2. update sqlite
-        return groupTable.saveMembers(members, group);
+        // pinned until the sqlite committed, so it won't be reloaded stale
+        membersCache.pin(group);
+        try {
+            // 1. update memory cache
+            membersCache.update(group, members, 3600 * 1000, now);
+            // 2. update sqlite
+            return groupTable.saveMembers(members, group);
+        } finally {
+            groupTable.afterCommitted(() -> membersCache.unpin(group));
+        }
     }
 
     @Override
     public List<ID> getAdministrators(ID group) {
-        // TODO: load admins
-        return null;
+        List<ID> admins = adminsCache.get(group, groupTable::getAdministrators, 3600 * 1000, 3600 * 1000);
+        return admins == null ? new ArrayList<>() : admins;
     }
 
     @Override
     public boolean saveAdministrators(List<ID> members, ID group) {
-        // TODO: save admins
-        return false;
+        long now = System.currentTimeMillis();
+        // pinned until the sqlite committed, so it won't be reloaded stale
+        adminsCache.pin(group);
+        try {
+            // 1. update memory cache
+            adminsCache.update(group, members, 3600 * 1000, now);
+            // 2. update sqlite
+            return groupTable.saveAdministrators(members, group);
+        } finally {
+            groupTable.afterCommitted(() -> adminsCache.unpin(group));
+        }
     }
 }
@@ -31,10 +31,11 @@
 package chat.dim.database;
 
 import chat.dim.dbi.MetaDBI;
-import chat.dim.mem.CacheHolder;
 import chat.dim.mem.CacheManager;
-import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
+import chat.dim.mem.EntityCodec;
+import chat.dim.mem.EntityWeigher;
+import chat.dim.mem.OffHeapTier;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.Meta;
 import chat.dim.sqlite.DatabaseConnector;
@@ -51,8 +52,22 @@ public class MetaDatabase implements MetaDBI {
         metaTable = new MetaTable(sqliteConnector);
         CacheManager man = CacheManager.getInstance();
         metaCache = man.getPool("meta");
+        metaCache.setCapacity(CACHE_CAPACITY, EntityWeigher.INSTANCE);
+        if (OFF_HEAP_CAPACITY > 0) {
+            metaCache.setSecondTier(new OffHeapTier<>(OFF_HEAP_CAPACITY, EntityCodec.META));
+        }
     }
 
+    /**
+     *  Max size of the cached metas, 0 means unbounded
+     */
+    public static long CACHE_CAPACITY = 16 * 1024 * 1024;  // 16 MB
+
+    /**
+     *  Size of the off-heap tier for the metas evicted from memory, 0 means disabled
+     */
+    public static long OFF_HEAP_CAPACITY = 0;
+
     //
     //  Meta DBI
     //
@@ -65,42 +80,21 @@ public class MetaDatabase implements MetaDBI {
             // meta exists, no need to update it
             return true;
         }
-        // 1. update memory cache
-        metaCache.update(entity, meta, 36000 * 1000, 0);
-        // 2. update sqlite
-        return metaTable.saveMeta(meta, entity);
+        // pinned until the sqlite committed, so it won't be reloaded stale
+        metaCache.pin(entity);
+        try {
+            // 1. update memory cache
+            metaCache.update(entity, meta, 36000 * 1000, 0);
+            // 2. update sqlite
+            return metaTable.saveMeta(meta, entity);
+        } finally {
+            metaTable.afterCommitted(() -> metaCache.unpin(entity));
+        }
     }
 
     @Override
     public Meta getMeta(ID entity) {
-        long now = System.currentTimeMillis();
-        Meta meta = null;
-        CacheHolder<Meta> holder = null;
-        // 1. check memory cache
-        CachePair<Meta> pair = metaCache.fetch(entity, now);
-        if (pair != null) {
-            meta = pair.value;
-            holder = pair.holder;
-        }
-        if (meta == null) {
-            // cache empty
-            if (holder == null) {
-                // meta not load yet, wait to load
-                metaCache.update(entity, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // meta not exists
-                    return null;
-                }
-                // meta expired, wait to reload
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            meta = metaTable.getMeta(entity);
-            // update memory cache
-            metaCache.update(entity, meta, 36000 * 1000, now);
-        }
-        // OK, return cached value
-        return meta;
+        // check memory cache, load from sqlite when missed
+        return metaCache.get(entity, metaTable::getMeta, 36000 * 1000, 36000 * 1000);
     }
 }
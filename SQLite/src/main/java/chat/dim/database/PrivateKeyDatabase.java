@@ -34,9 +34,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.dbi.PrivateKeyDBI;
-import chat.dim.mem.CacheHolder;
 import chat.dim.mem.CacheManager;
-import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
 import chat.dim.protocol.DecryptKey;
 import chat.dim.protocol.ID;
@@ -66,9 +64,12 @@ public class PrivateKeyDatabase implements PrivateKeyDBI {
     @Override
     public boolean savePrivateKey(PrivateKey key, String type, ID user) {
         long now = System.currentTimeMillis();
+        CachePool<ID, ?> pool;
         // 1. update memory cache
         if (type != null && type.equals(PrivateKeyDBI.META)) {
             // update 'id_key'
+            pool = idKeyCache;
+            pool.pin(user);
             idKeyCache.update(user, key, 36000*1000, now);
         } else {
             // add to old keys
@@ -81,47 +82,24 @@ public class PrivateKeyDatabase implements PrivateKeyDBI {
             }
             // update 'msg_keys"
             decryptKeys = PrivateKeyDBI.convertDecryptKeys(privateKeys);
+            pool = msgKeysCache;
+            pool.pin(user);
             msgKeysCache.update(user, decryptKeys, 36000*1000, now);
         }
-        // 2. update sqlite
-        return privateKeyTable.savePrivateKey(key, type, user);
+        // 2. update sqlite, the cache key is pinned until committed,
+        //    so it won't be reloaded stale
+        try {
+            return privateKeyTable.savePrivateKey(key, type, user);
+        } finally {
+            privateKeyTable.afterCommitted(() -> pool.unpin(user));
+        }
     }
 
     @Override
     public List<DecryptKey> getPrivateKeysForDecryption(ID user) {
-        long now = System.currentTimeMillis();
-        List<DecryptKey> decryptKeys = null;
-        CacheHolder<List<DecryptKey>> holder = null;
-        // 1. check memory cache
-        CachePair<List<DecryptKey>> pair = msgKeysCache.fetch(user, now);
-        if (pair != null) {
-            decryptKeys = pair.value;
-            holder = pair.holder;
-        }
-        if (decryptKeys == null) {
-            // cache empty
-            if (holder == null) {
-                // msg keys not load yet, wait to load
-                msgKeysCache.update(user, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // msg keys not exists
-                    return new ArrayList<>();
-                }
-                // msg keys expired, wait to reload
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            decryptKeys = privateKeyTable.getPrivateKeysForDecryption(user);
-            if (decryptKeys == null) {
-                // placeholder
-                decryptKeys = new ArrayList<>();
-            }
-            // update memory cache
-            msgKeysCache.update(user, decryptKeys, 36000 * 1000, now);
-        }
-        // OK, return cached value
-        return decryptKeys;
+        List<DecryptKey> decryptKeys = msgKeysCache.get(user, privateKeyTable::getPrivateKeysForDecryption,
+                36000 * 1000, 36000 * 1000);
+        return decryptKeys == null ? new ArrayList<>() : decryptKeys;
     }
 
     @Override
@@ -132,34 +110,6 @@ public class PrivateKeyDatabase implements PrivateKeyDBI {
 
     @Override
     public PrivateKey getPrivateKeyForVisaSignature(ID user) {
-        long now = System.currentTimeMillis();
-        PrivateKey privateKey = null;
-        CacheHolder<PrivateKey> holder = null;
-        // 1. check memory cache
-        CachePair<PrivateKey> pair = idKeyCache.fetch(user, now);
-        if (pair != null) {
-            privateKey = pair.value;
-            holder = pair.holder;
-        }
-        if (privateKey == null) {
-            // cache empty
-            if (holder == null) {
-                // id key not load yet, wait to load
-                idKeyCache.update(user, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // id key not exists
-                    return null;
-                }
-                // id key expired, wait to reload
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            privateKey = privateKeyTable.getPrivateKeyForVisaSignature(user);
-            // update memory cache
-            idKeyCache.update(user, privateKey, 36000 * 1000, now);
-        }
-        // OK, return cached value
-        return privateKey;
+        return idKeyCache.get(user, privateKeyTable::getPrivateKeyForVisaSignature, 36000 * 1000, 36000 * 1000);
     }
 }
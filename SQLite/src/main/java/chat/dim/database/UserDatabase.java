@@ -35,9 +35,7 @@ import java.util.List;
 
 import chat.dim.dbi.ContactDBI;
 import chat.dim.dbi.UserDBI;
-import chat.dim.mem.CacheHolder;
 import chat.dim.mem.CacheManager;
-import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
 import chat.dim.protocol.ID;
 import chat.dim.sqlite.DatabaseConnector;
@@ -63,91 +61,41 @@ public class UserDatabase implements UserDBI, ContactDBI {
 
     @Override
     public List<ID> getLocalUsers() {
-        long now = System.currentTimeMillis();
-        List<ID> users = null;
-        CacheHolder<List<ID>> holder = null;
-        // 1. check memory cache
-        CachePair<List<ID>> pair = dimCache.fetch("local_users", now);
-        if (pair != null) {
-            users = pair.value;
-            holder = pair.holder;
-        }
-        if (users == null) {
-            // cache empty
-            if (holder == null) {
-                // cache not load yet, wait to load
-                dimCache.update("local_users", null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // cache not exists
-                    return new ArrayList<>();
-                }
-                // cache expired, wait to reload
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            users = userTable.getLocalUsers();
-            if (users == null) {
-                // placeholder
-                users = new ArrayList<>();
-            }
-            // update memory cache
-            dimCache.update("local_users", users, 36000 * 1000, now);
-        }
-        // OK, return cached value
-        return users;
+        List<ID> users = dimCache.get("local_users", key -> userTable.getLocalUsers(), 36000 * 1000, 36000 * 1000);
+        return users == null ? new ArrayList<>() : users;
     }
 
     @Override
     public boolean saveLocalUsers(List<ID> users) {
-        // 1. update memory cache
-        dimCache.update("local_users", users, 36000 * 1000, 0);
-        // 2. update sqlite
-        return userTable.saveLocalUsers(users);
+        // pinned until the sqlite committed, so it won't be reloaded stale
+        dimCache.pin("local_users");
+        try {
+            // 1. update memory cache
+            dimCache.update("local_users", users, 36000 * 1000, 0);
+            // 2. update sqlite
+            return userTable.saveLocalUsers(users);
+        } finally {
+            userTable.afterCommitted(() -> dimCache.unpin("local_users"));
+        }
     }
 
     @Override
     public List<ID> getContacts(ID user) {
-        long now = System.currentTimeMillis();
-        List<ID> contacts = null;
-        CacheHolder<List<ID>> holder = null;
-        // 1. check memory cache
-        CachePair<List<ID>> pair = contactCache.fetch(user, now);
-        if (pair != null) {
-            contacts = pair.value;
-            holder = pair.holder;
-        }
-        if (contacts == null) {
-            // cache empty
-            if (holder == null) {
-                // cache not load yet, wait to load
-                contactCache.update(user, null, 128 * 1000, now);
-            } else {
-                if (holder.isAlive(now)) {
-                    // cache not exists
-                    return new ArrayList<>();
-                }
-                // cache expired, wait to reload
-                holder.renewal(128 * 1000, now);
-            }
-            // 2. check sqlite
-            contacts = contactTable.getContacts(user);
-            if (contacts == null) {
-                // placeholder
-                contacts = new ArrayList<>();
-            }
-            // update memory cache
-            contactCache.update(user, contacts, 36000 * 1000, now);
-        }
-        // OK, return cached value
-        return contacts;
+        List<ID> contacts = contactCache.get(user, contactTable::getContacts, 36000 * 1000, 36000 * 1000);
+        return contacts == null ? new ArrayList<>() : contacts;
     }
 
     @Override
     public boolean saveContacts(List<ID> contacts, ID user) {
-        // 1. update memory cache
-        contactCache.update(user, contacts, 36000 * 1000, 0);
-        // 2. update sqlite
-        return contactTable.saveContacts(contacts, user);
+        // pinned until the sqlite committed, so it won't be reloaded stale
+        contactCache.pin(user);
+        try {
+            // 1. update memory cache
+            contactCache.update(user, contacts, 36000 * 1000, 0);
+            // 2. update sqlite
+            return contactTable.saveContacts(contacts, user);
+        } finally {
+            contactTable.afterCommitted(() -> contactCache.unpin(user));
+        }
     }
 }
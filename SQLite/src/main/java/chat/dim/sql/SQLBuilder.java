@@ -30,6 +30,8 @@
  */
 package chat.dim.sql;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public final class SQLBuilder {
@@ -44,10 +46,22 @@ public final class SQLBuilder {
 
     private final StringBuilder sb = new StringBuilder(128);
 
-    public SQLBuilder(String sql) {
+    // values for placeholders, null means writing values into SQL directly
+    private final List<Object> values;
+
+    public SQLBuilder(String sql, boolean prepared) {
+        values = prepared ? new ArrayList<>() : null;
         append(sql);
     }
 
+    public SQLBuilder(String sql) {
+        this(sql, false);
+    }
+
+    private SQLStatement toStatement() {
+        return new SQLStatement(sb.toString(), values);
+    }
+
     @Override
     public String toString() {
         return sb.toString();
@@ -62,11 +76,19 @@ public final class SQLBuilder {
     }
 
     private void appendEscapeValueList(Object[] array) {
-        SQLValues.appendEscapeValueList(sb, array);
+        if (values == null) {
+            SQLValues.appendEscapeValueList(sb, array);
+        } else {
+            SQLValues.appendPlaceholderList(sb, array, values);
+        }
     }
 
-    private void appendValues(SQLValues values) {
-        values.appendValues(sb);
+    private void appendValues(SQLValues sqlValues) {
+        if (values == null) {
+            sqlValues.appendValues(sb);
+        } else {
+            sqlValues.appendPlaceholders(sb, values);
+        }
     }
 
     //  SELECT *       ...
@@ -93,7 +115,11 @@ public final class SQLBuilder {
             return;
         }
         append(" WHERE ");
-        conditions.appendEscapeValue(sb);
+        if (values == null) {
+            conditions.appendEscapeValue(sb);
+        } else {
+            conditions.appendPlaceholder(sb, values);
+        }
     }
 
     //
@@ -113,7 +139,17 @@ public final class SQLBuilder {
     //  CREATE INDEX IF NOT EXISTS name ON table (fields);
     //
     public static String buildCreateIndex(String name, String table, String[] fields) {
+        return buildCreateIndex(name, table, fields, false);
+    }
+
+    //
+    //  CREATE UNIQUE INDEX IF NOT EXISTS name ON table (fields);
+    //
+    public static String buildCreateIndex(String name, String table, String[] fields, boolean unique) {
         SQLBuilder builder = new SQLBuilder(CREATE);
+        if (unique) {
+            builder.append(" UNIQUE");
+        }
         builder.append(" INDEX IF NOT EXISTS ");
         builder.append(name);
         builder.append(" ON ");
@@ -139,6 +175,23 @@ public final class SQLBuilder {
         return builder.toString();
     }
 
+    //
+    //  DELETE FROM table WHERE id NOT IN (SELECT MAX(id) FROM table GROUP BY keys);
+    //
+    //  keep the last record for each keys, before creating unique index
+    //
+    public static String buildDeleteDuplicates(String table, String[] keys) {
+        SQLBuilder builder = new SQLBuilder(DELETE);
+        builder.append(" FROM ");
+        builder.append(table);
+        builder.append(" WHERE id NOT IN (SELECT MAX(id) FROM ");
+        builder.append(table);
+        builder.append(" GROUP BY ");
+        builder.appendStringList(keys);
+        builder.append(")");
+        return builder.toString();
+    }
+
     //
     //  DROP TABLE IF EXISTS table;
     //
@@ -148,14 +201,71 @@ public final class SQLBuilder {
     //
     public static String buildInsert(String table, String[] columns, Object[] values) {
         SQLBuilder builder = new SQLBuilder(INSERT);
+        builder.insert(table, columns, values);
+        return builder.toString();
+    }
+    public static SQLStatement prepareInsert(String table, String[] columns, Object[] values) {
+        SQLBuilder builder = new SQLBuilder(INSERT, true);
+        builder.insert(table, columns, values);
+        return builder.toStatement();
+    }
+    //
+    //  INSERT INTO table (columns) SELECT values
+    //          WHERE NOT EXISTS (SELECT 1 FROM table WHERE conditions);
+    //
+    public static SQLStatement prepareInsertIfAbsent(String table, String[] columns, Object[] values,
+                                                     SQLConditions conditions) {
+        SQLBuilder builder = new SQLBuilder(INSERT, true);
         builder.append(" INTO ");
         builder.append(table);
         builder.append("(");
         builder.appendStringList(columns);
-        builder.append(") VALUES (");
+        builder.append(") SELECT ");
         builder.appendEscapeValueList(values);
+        builder.append(" WHERE NOT EXISTS (SELECT 1 FROM ");
+        builder.append(table);
+        builder.appendWhere(conditions);
         builder.append(")");
-        return builder.toString();
+        return builder.toStatement();
+    }
+
+    //
+    //  INSERT INTO table (columns) VALUES (?, ...)
+    //          ON CONFLICT (keys) DO UPDATE SET name=excluded.name, ...;
+    //
+    //  NOTICE: a unique index on the keys is required (SQLite 3.24+),
+    //          DO NOTHING when 'updates' empty
+    //
+    public static SQLStatement prepareUpsert(String table, String[] columns, Object[] values,
+                                             String[] keys, String[] updates) {
+        SQLBuilder builder = new SQLBuilder(INSERT, true);
+        builder.insert(table, columns, values);
+        builder.append(" ON CONFLICT(");
+        builder.appendStringList(keys);
+        builder.append(") DO ");
+        if (updates == null || updates.length == 0) {
+            builder.append("NOTHING");
+            return builder.toStatement();
+        }
+        builder.append("UPDATE SET ");
+        for (int i = 0; i < updates.length; ++i) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(updates[i]);
+            builder.append("=excluded.");
+            builder.append(updates[i]);
+        }
+        return builder.toStatement();
+    }
+    private void insert(String table, String[] columns, Object[] array) {
+        append(" INTO ");
+        append(table);
+        append("(");
+        appendStringList(columns);
+        append(") VALUES (");
+        appendEscapeValueList(array);
+        append(")");
     }
 
     //
@@ -170,21 +280,35 @@ public final class SQLBuilder {
                                      String groupBy, String having, String orderBy,
                                      int limit, int offset) {
         SQLBuilder builder = new SQLBuilder(SELECT);
+        builder.select(distinct, columns, table, conditions, groupBy, having, orderBy, limit, offset);
+        return builder.toString();
+    }
+    public static SQLStatement prepareSelect(boolean distinct, String[] columns,
+                                             String table, SQLConditions conditions,
+                                             String groupBy, String having, String orderBy,
+                                             int limit, int offset) {
+        SQLBuilder builder = new SQLBuilder(SELECT, true);
+        builder.select(distinct, columns, table, conditions, groupBy, having, orderBy, limit, offset);
+        return builder.toStatement();
+    }
+    private void select(boolean distinct, String[] columns,
+                        String table, SQLConditions conditions,
+                        String groupBy, String having, String orderBy,
+                        int limit, int offset) {
         if (distinct) {
-            builder.append(" DISTINCT");
+            append(" DISTINCT");
         }
-        builder.appendColumns(columns);
-        builder.append(" FROM ");
-        builder.append(table);
-        builder.appendWhere(conditions);
-        builder.appendClause(" GROUP BY ", groupBy);
-        builder.appendClause(" HAVING ", having);
-        builder.appendClause(" ORDER BY ", orderBy);
+        appendColumns(columns);
+        append(" FROM ");
+        append(table);
+        appendWhere(conditions);
+        appendClause(" GROUP BY ", groupBy);
+        appendClause(" HAVING ", having);
+        appendClause(" ORDER BY ", orderBy);
         if (limit > 0) {
-            builder.appendClause(" LIMIT ", String.valueOf(limit));
-            builder.appendClause(" OFFSET ", String.valueOf(offset));
+            appendClause(" LIMIT ", String.valueOf(limit));
+            appendClause(" OFFSET ", String.valueOf(offset));
         }
-        return builder.toString();
     }
 
     //
@@ -192,22 +316,38 @@ public final class SQLBuilder {
     //
     public static String buildUpdate(String table, Map<String, Object> values, SQLConditions conditions) {
         SQLBuilder builder = new SQLBuilder(UPDATE);
-        builder.append(" ");
-        builder.append(table);
-        builder.append(" SET ");
-        builder.appendValues(SQLValues.from(values));
-        builder.appendWhere(conditions);
+        builder.update(table, values, conditions);
         return builder.toString();
     }
+    public static SQLStatement prepareUpdate(String table, Map<String, Object> values, SQLConditions conditions) {
+        SQLBuilder builder = new SQLBuilder(UPDATE, true);
+        builder.update(table, values, conditions);
+        return builder.toStatement();
+    }
+    private void update(String table, Map<String, Object> map, SQLConditions conditions) {
+        append(" ");
+        append(table);
+        append(" SET ");
+        appendValues(SQLValues.from(map));
+        appendWhere(conditions);
+    }
 
     //
     //  DELETE FROM table WHERE conditions
     //
     public static String buildDelete(String table, SQLConditions conditions) {
         SQLBuilder builder = new SQLBuilder(DELETE);
-        builder.append(" FROM ");
-        builder.append(table);
-        builder.appendWhere(conditions);
+        builder.delete(table, conditions);
         return builder.toString();
     }
+    public static SQLStatement prepareDelete(String table, SQLConditions conditions) {
+        SQLBuilder builder = new SQLBuilder(DELETE, true);
+        builder.delete(table, conditions);
+        return builder.toStatement();
+    }
+    private void delete(String table, SQLConditions conditions) {
+        append(" FROM ");
+        append(table);
+        appendWhere(conditions);
+    }
 }
@@ -71,6 +71,18 @@ public final class SQLValues {
         }
     }
 
+    // name=?,name=?
+    void appendPlaceholders(StringBuilder sb, List<Object> values) {
+        for (Pair<String, Object> pair : valueList) {
+            sb.append(pair.first);
+            sb.append("=?,");
+            values.add(pair.second);
+        }
+        if (valueList.size() > 0) {
+            sb.deleteCharAt(sb.length() - 1);  // remove last ','
+        }
+    }
+
     static void appendEscapeValue(StringBuilder sb, Object value) {
         // TODO: other types?
         if (value instanceof Number) {
@@ -110,6 +122,17 @@ public final class SQLValues {
         }
     }
 
+    // ?,?,?
+    static void appendPlaceholderList(StringBuilder sb, Object[] array, List<Object> values) {
+        for (Object item : array) {
+            sb.append("?,");
+            values.add(item);
+        }
+        if (array.length > 0) {
+            sb.deleteCharAt(sb.length() - 1);  // remove last ','
+        }
+    }
+
     static void appendStringList(StringBuilder sb, String[] array) {
         for (String item : array) {
             sb.append(item);
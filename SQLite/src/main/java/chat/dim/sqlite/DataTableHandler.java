@@ -36,11 +36,15 @@ import java.util.Map;
 
 import chat.dim.sql.SQLBuilder;
 import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
 
 public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
 
+    private final SchemaTable schemaTable;
+
     public DataTableHandler(DatabaseConnector sqliteConnector) {
         super(sqliteConnector);
+        schemaTable = new SchemaTable(sqliteConnector);
     }
 
     protected abstract DataRowExtractor<T> getDataRowExtractor();
@@ -57,11 +61,35 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
         }
     }
 
+    public boolean createIndex(String name, String table, String[] fields) {
+        // CREATE INDEX name ON table (field, ...);
+        String sql = SQLBuilder.buildCreateIndex(name, table, fields);
+        try {
+            executeUpdate(sql);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     *  Execute the migration once for upgrading the table to the version
+     *
+     * @param table   - table name
+     * @param version - schema version after migrated, starts from 1
+     * @param sqlList - DDL/DML executed in one transaction
+     * @return false on DB error
+     */
+    public boolean migrate(String table, int version, String... sqlList) {
+        return schemaTable.migrate(table, version, sqlList);
+    }
+
     public int insert(String table, String[] columns, Object[] values) {
         // INSERT INTO table (columns) VALUES (values);
-        String sql = SQLBuilder.buildInsert(table, columns, values);
+        SQLStatement statement = SQLBuilder.prepareInsert(table, columns, values);
         try {
-            return executeUpdate(sql);
+            return executeUpdate(statement);
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
@@ -77,10 +105,10 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
     public List<T> select(String table, String[] columns, SQLConditions conditions,
                           String groupBy, String having, String orderBy, int limit, int offset) {
         // SELECT DISTINCT columns FROM tables WHERE conditions ...
-        String sql = SQLBuilder.buildSelect(false, columns, table, conditions,
+        SQLStatement statement = SQLBuilder.prepareSelect(false, columns, table, conditions,
                 groupBy, having, orderBy, limit, offset);
         try {
-            return executeQuery(sql, getDataRowExtractor());
+            return executeQuery(statement, getDataRowExtractor());
         } catch (SQLException e) {
             e.printStackTrace();
             return null;
@@ -89,20 +117,60 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
 
     public int update(String table, Map<String, Object> values, SQLConditions conditions) {
         // UPDATE table SET name=value WHERE conditions
-        String sql = SQLBuilder.buildUpdate(table, values, conditions);
+        SQLStatement statement = SQLBuilder.prepareUpdate(table, values, conditions);
         try {
-            return executeUpdate(sql);
+            return executeUpdate(statement);
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
         }
     }
 
+    /**
+     *  Execute the statements in one transaction,
+     *  committed in background when write-behind enabled
+     *
+     * @param statements - mutation
+     * @return false on DB error, or failed to queue
+     */
+    protected boolean write(List<SQLStatement> statements) {
+        return write(statements, false);
+    }
+
+    /**
+     *  Execute the statements in one transaction
+     *
+     * @param statements - mutation
+     * @param waiting    - true to wait until committed, for the tables
+     *                     without memory cache or the data must be durable
+     * @return false on DB error or timeout
+     */
+    protected boolean write(List<SQLStatement> statements, boolean waiting) {
+        WriteBehindQueue queue = getWriteQueue();
+        if (queue != null) {
+            // queued after the pending mutations, so the order is kept
+            WriteBehindQueue.Ticket ticket = queue.submit(statements);
+            if (!waiting) {
+                // not committed yet, unless it failed already (e.g. interrupted)
+                return !ticket.isFailed();
+            }
+            Boolean ok = ticket.await(WriteBehindQueue.SYNC_TIMEOUT);
+            return ok != null && ok;
+        }
+        try {
+            executeUpdate(statements);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     public int delete(String table, SQLConditions conditions) {
         // DELETE FROM table WHERE conditions
-        String sql = SQLBuilder.buildDelete(table, conditions);
+        SQLStatement statement = SQLBuilder.prepareDelete(table, conditions);
         try {
-            return executeUpdate(sql);
+            return executeUpdate(statement);
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
@@ -33,19 +33,66 @@ package chat.dim.sqlite;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import chat.dim.filesys.Paths;
 
+/**
+ *  SQLite Connector
+ *  ~~~~~~~~~~~~~~~~
+ *
+ *  Opens the database in WAL mode, with one writer connection (serialized)
+ *  and a pool of read-only connections, so SELECTs from different threads
+ *  can run in parallel, and won't be blocked by the writer.
+ *
+ *  Connections are borrowed by one thread at a time, with their cached
+ *  prepared statements.
+ */
 public class DatabaseConnector {
 
+    /**
+     *  Max count of prepared statements cached for each connection
+     */
+    public static int STATEMENT_CACHE_SIZE = 64;
+
+    /**
+     *  Max count of read-only connections
+     */
+    public static int READER_COUNT = 4;
+
+    /**
+     *  Pragmas for each connection
+     */
+    public static String SYNCHRONOUS = "NORMAL";     // safe in WAL mode
+    public static long MMAP_SIZE = 64 * 1024 * 1024;  // 64 MB
+    public static int CACHE_SIZE = -8 * 1024;        // 8 MB (negative means KiB)
+    public static int BUSY_TIMEOUT = 5000;           // milliseconds
+
+    /**
+     *  Commit mutations of the tables in background with batched transactions
+     */
+    public static boolean WRITE_BEHIND = true;
+
     private final String dbFilePath;
-    private Connection connection;
+
+    private PooledConnection writer = null;
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    private final BlockingQueue<PooledConnection> idleReaders = new LinkedBlockingQueue<>();
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    private WriteBehindQueue writeQueue = null;
 
     public DatabaseConnector(String sqliteFilePath) {
         super();
         dbFilePath = sqliteFilePath;
-        // lazy load
-        connection = null;
     }
 
     @Override
@@ -55,24 +102,194 @@ public class DatabaseConnector {
     }
 
     public void destroy() throws SQLException {
-        Connection conn = connection;
-        if (conn != null) {
-            connection = null;
-            conn.close();
+        // commit the pending mutations before closing
+        WriteBehindQueue queue;
+        synchronized (this) {
+            queue = writeQueue;
+            writeQueue = null;
+        }
+        if (queue != null) {
+            queue.stop();
+        }
+        closed = true;
+        writerLock.lock();
+        try {
+            PooledConnection conn = writer;
+            if (conn != null) {
+                writer = null;
+                conn.close();
+            }
+        } finally {
+            writerLock.unlock();
+        }
+        // readers in use will be closed when released
+        PooledConnection conn;
+        while ((conn = idleReaders.poll()) != null) {
+            removeReader(conn);
         }
     }
 
+    /**
+     *  Get the queue for committing mutations in background
+     *
+     * @return null when write-behind disabled
+     */
+    public synchronized WriteBehindQueue getWriteQueue() {
+        WriteBehindQueue queue = writeQueue;
+        if (queue == null && WRITE_BEHIND && !closed) {
+            queue = new WriteBehindQueue(this);
+            queue.start();
+            writeQueue = queue;
+        }
+        return queue;
+    }
+
+    /**
+     *  Wait until all mutations submitted before committed,
+     *  call it before exiting or reporting the data saved
+     *
+     * @param timeout - milliseconds
+     * @return false on timeout
+     */
+    public boolean flush(long timeout) {
+        WriteBehindQueue queue;
+        synchronized (this) {
+            queue = writeQueue;
+        }
+        return queue == null || queue.flush(timeout);
+    }
+
+    /**
+     *  Get the writer connection
+     *
+     *  Deprecated, the connection returned is shared by the write-behind queue
+     *  and other threads without the writer lock, so it breaks the single
+     *  writer guarantee; use 'DatabaseHandler' for executing instead.
+     */
+    @Deprecated
     public Connection getConnection() throws SQLException {
-        Connection conn = connection;
+        writerLock.lock();
+        try {
+            return getWriter().getConnection();
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private PooledConnection getWriter() throws SQLException {
+        PooledConnection conn = writer;
         if (conn == null) {
+            if (closed) {
+                throw new SQLException("database closed: " + dbFilePath);
+            }
             if (!Paths.exists(dbFilePath)) {
                 // make sure parent directory exists
                 String dir = Paths.parent(dbFilePath);
                 Paths.mkdirs(dir);
             }
-            conn = DriverManager.getConnection("jdbc:sqlite:" + dbFilePath);
-            connection = conn;
+            Connection connection = open();
+            try (Statement stat = connection.createStatement()) {
+                // WAL mode is persistent in the database file
+                stat.execute("PRAGMA journal_mode=WAL");
+            }
+            conn = new PooledConnection(connection);
+            writer = conn;
         }
         return conn;
     }
+
+    private Connection open() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFilePath);
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT);
+            stat.execute("PRAGMA synchronous=" + SYNCHRONOUS);
+            stat.execute("PRAGMA mmap_size=" + MMAP_SIZE);
+            stat.execute("PRAGMA cache_size=" + CACHE_SIZE);
+        }
+        return connection;
+    }
+
+    /**
+     *  Lock the writer connection, must call 'releaseWriter()' after used
+     *
+     * @return writer connection
+     */
+    PooledConnection acquireWriter() throws SQLException {
+        writerLock.lock();
+        try {
+            return getWriter();
+        } catch (SQLException | RuntimeException e) {
+            writerLock.unlock();
+            throw e;
+        }
+    }
+
+    void releaseWriter(PooledConnection conn) {
+        assert conn == writer || writer == null : "writer connection error";
+        writerLock.unlock();
+    }
+
+    /**
+     *  Borrow a read-only connection, must call 'releaseReader()' after used
+     *
+     * @return reader connection
+     */
+    PooledConnection acquireReader() throws SQLException {
+        if (closed) {
+            throw new SQLException("database closed: " + dbFilePath);
+        }
+        PooledConnection conn = idleReaders.poll();
+        if (conn == null) {
+            synchronized (allReaders) {
+                if (allReaders.size() < READER_COUNT) {
+                    conn = openReader();
+                    allReaders.add(conn);
+                    return conn;
+                }
+            }
+            // all readers busy, wait for one
+            try {
+                conn = idleReaders.poll(BUSY_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new SQLException("interrupted while waiting for connection", e);
+            }
+            if (conn == null) {
+                throw new SQLException("timeout while waiting for connection: " + dbFilePath);
+            }
+        }
+        if (closed) {
+            // closed while waiting
+            removeReader(conn);
+            throw new SQLException("database closed: " + dbFilePath);
+        }
+        return conn;
+    }
+
+    private PooledConnection openReader() throws SQLException {
+        if (closed) {
+            throw new SQLException("database closed: " + dbFilePath);
+        }
+        // make sure the database file created in WAL mode
+        releaseWriter(acquireWriter());
+        Connection connection = open();
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("PRAGMA query_only=ON");
+        }
+        return new PooledConnection(connection);
+    }
+
+    void releaseReader(PooledConnection conn) {
+        if (closed) {
+            removeReader(conn);
+        } else {
+            idleReaders.add(conn);
+        }
+    }
+
+    private void removeReader(PooledConnection conn) {
+        synchronized (allReaders) {
+            allReaders.remove(conn);
+        }
+        conn.close();
+    }
 }
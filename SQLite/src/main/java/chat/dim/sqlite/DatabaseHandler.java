@@ -31,54 +31,65 @@
 package chat.dim.sqlite;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
+import chat.dim.sql.SQLStatement;
+
+/**
+ *  Execute SQL with connections borrowed from the connector,
+ *  queries run on the read-only connections, updates on the writer;
+ *  no state kept in the handler, so it can be shared by threads.
+ */
 public class DatabaseHandler<T> {
 
     private final DatabaseConnector connector;
-    private Statement statement;
-    private ResultSet resultSet;
 
     public DatabaseHandler(DatabaseConnector sqliteConnector) {
         super();
         connector = sqliteConnector;
-        statement = null;
-        resultSet = null;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        destroy();
-        super.finalize();
+    /**
+     *  Deprecated, see 'DatabaseConnector.getConnection()'
+     */
+    @Deprecated
+    public Connection getConnection() throws SQLException {
+        return connector.getConnection();
     }
 
-    public void destroy() throws SQLException {
-        Statement stat = statement;
-        if (stat != null) {
-            statement = null;
-            stat.close();
-        }
-        ResultSet result = resultSet;
-        if (result != null) {
-            resultSet = null;
-            result.close();
-        }
+    public WriteBehindQueue getWriteQueue() {
+        return connector.getWriteQueue();
     }
 
-    public Connection getConnection() throws SQLException {
-        return connector.getConnection();
+    /**
+     *  Wait until all mutations of the database committed
+     *
+     * @param timeout - milliseconds
+     * @return false on timeout
+     */
+    public boolean flush(long timeout) {
+        return connector.flush(timeout);
     }
-    public Statement getStatement() throws SQLException {
-        Statement stat = statement;
-        if (stat == null) {
-            stat = getConnection().createStatement();
-            statement = stat;
+
+    /**
+     *  Run the callback after all mutations submitted before committed
+     *  (or failed), e.g. unpin the cache key; runs immediately when the
+     *  mutations were written directly
+     *
+     * @param callback - action after committed
+     */
+    public void afterCommitted(Runnable callback) {
+        WriteBehindQueue queue = getWriteQueue();
+        if (queue == null) {
+            callback.run();
+        } else {
+            queue.mark().then(callback);
         }
-        return stat;
     }
 
     /**
@@ -90,16 +101,13 @@ public class DatabaseHandler<T> {
      * @throws SQLException on DB error
      */
     public List<T> executeQuery(String sql, DataRowExtractor<T> extractor) throws SQLException {
-        List<T> rows = new ArrayList<>();
-        try {
-            resultSet = getStatement().executeQuery(sql);
-            while (resultSet.next()) {
-                rows.add(extractor.extractRow(resultSet, resultSet.getRow()));
-            }
+        PooledConnection conn = connector.acquireReader();
+        try (Statement stat = conn.getConnection().createStatement();
+             ResultSet result = stat.executeQuery(sql)) {
+            return extract(result, extractor);
         } finally {
-            destroy();
+            connector.releaseReader(conn);
         }
-        return rows;
     }
 
     /**
@@ -110,19 +118,131 @@ public class DatabaseHandler<T> {
      * @throws SQLException on DB error
      */
     public int executeUpdate(String sql) throws SQLException {
-        try {
-            return getStatement().executeUpdate(sql);
+        PooledConnection conn = connector.acquireWriter();
+        try (Statement stat = conn.getConnection().createStatement()) {
+            return stat.executeUpdate(sql);
         } finally {
-            destroy();
+            connector.releaseWriter(conn);
         }
     }
     public void executeUpdate(String... sqlList) throws SQLException {
-        try {
+        PooledConnection conn = connector.acquireWriter();
+        try (Statement stat = conn.getConnection().createStatement()) {
             for (String sql : sqlList) {
-                getStatement().executeUpdate(sql);
+                stat.executeUpdate(sql);
+            }
+        } finally {
+            connector.releaseWriter(conn);
+        }
+    }
+
+    /**
+     *  Query (SELECT) with cached statement
+     *
+     * @param statement - SQL with placeholders & values
+     * @param extractor - result extractor
+     * @return rows
+     * @throws SQLException on DB error
+     */
+    public List<T> executeQuery(SQLStatement statement, DataRowExtractor<T> extractor) throws SQLException {
+        PooledConnection conn = connector.acquireReader();
+        try {
+            PreparedStatement stat = conn.prepareStatement(statement.sql);
+            bind(stat, statement.values);
+            try (ResultSet result = stat.executeQuery()) {
+                return extract(result, extractor);
             }
         } finally {
-            destroy();
+            connector.releaseReader(conn);
+        }
+    }
+
+    /**
+     *  Update (INSERT, UPDATE, DELETE) with cached statement
+     *
+     * @param statement - SQL with placeholders & values
+     * @return result
+     * @throws SQLException on DB error
+     */
+    public int executeUpdate(SQLStatement statement) throws SQLException {
+        PooledConnection conn = connector.acquireWriter();
+        try {
+            PreparedStatement stat = conn.prepareStatement(statement.sql);
+            bind(stat, statement.values);
+            return stat.executeUpdate();
+        } finally {
+            connector.releaseWriter(conn);
+        }
+    }
+
+    /**
+     *  Update (INSERT, UPDATE, DELETE) in one transaction
+     *
+     * @param statements - SQL with placeholders & values
+     * @throws SQLException on DB error (rolled back)
+     */
+    public void executeUpdate(List<SQLStatement> statements) throws SQLException {
+        PooledConnection conn = connector.acquireWriter();
+        try {
+            executeTransaction(conn, statements);
+        } finally {
+            connector.releaseWriter(conn);
+        }
+    }
+
+    static void executeTransaction(PooledConnection conn, List<SQLStatement> statements) throws SQLException {
+        Connection connection = conn.getConnection();
+        connection.setAutoCommit(false);
+        try {
+            executeBatch(conn, statements);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    // execute the adjacent statements with same SQL as a JDBC batch
+    private static void executeBatch(PooledConnection conn, List<SQLStatement> statements) throws SQLException {
+        PreparedStatement stat = null;
+        String sql = null;
+        for (SQLStatement item : statements) {
+            if (!item.sql.equals(sql)) {
+                if (stat != null) {
+                    stat.executeBatch();
+                }
+                sql = item.sql;
+                stat = conn.prepareStatement(sql);
+            }
+            bind(stat, item.values);
+            stat.addBatch();
+        }
+        if (stat != null) {
+            stat.executeBatch();
+        }
+    }
+
+    private List<T> extract(ResultSet result, DataRowExtractor<T> extractor) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        while (result.next()) {
+            rows.add(extractor.extractRow(result, result.getRow()));
+        }
+        return rows;
+    }
+
+    static void bind(PreparedStatement stat, List<Object> values) throws SQLException {
+        stat.clearParameters();
+        int index = 0;
+        for (Object item : values) {
+            ++index;
+            // same as the values written into SQL: number or string
+            if (item == null || item instanceof Number || item instanceof String) {
+                stat.setObject(index, item);
+            } else {
+                stat.setString(index, item.toString());
+            }
         }
     }
 
@@ -0,0 +1,103 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  Connection with its prepared statements,
+ *  used by one thread at a time (borrowed from the connector)
+ */
+final class PooledConnection {
+
+    private final Connection connection;
+
+    // SQL => statement, LRU first
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    PooledConnection(Connection conn) {
+        super();
+        connection = conn;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     *  Get prepared statement from cache, or create a new one
+     *
+     * @param sql - SQL with '?' placeholders
+     * @return cached statement
+     */
+    PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement stat = statements.get(sql);
+        if (stat != null) {
+            return stat;
+        }
+        stat = connection.prepareStatement(sql);
+        statements.put(sql, stat);
+        // close the LRU statements
+        Iterator<PreparedStatement> iterator = statements.values().iterator();
+        PreparedStatement eldest;
+        while (statements.size() > DatabaseConnector.STATEMENT_CACHE_SIZE && iterator.hasNext()) {
+            eldest = iterator.next();
+            iterator.remove();
+            close(eldest);
+        }
+        return stat;
+    }
+
+    void close() {
+        for (PreparedStatement stat : statements.values()) {
+            close(stat);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void close(PreparedStatement stat) {
+        try {
+            stat.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
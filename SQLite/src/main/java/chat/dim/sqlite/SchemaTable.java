@@ -0,0 +1,134 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
+
+/**
+ *  Schema versions of the tables
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Each migration is executed only once, together with the new version
+ *  in one transaction, so an interrupted migration will be executed again.
+ */
+public class SchemaTable extends DatabaseHandler<Integer> {
+
+    private volatile boolean prepared = false;
+
+    public SchemaTable(DatabaseConnector sqliteConnector) {
+        super(sqliteConnector);
+    }
+
+    private boolean prepare() {
+        if (!prepared) {
+            // create table if not exists
+            String[] fields = {
+                    "tbl VARCHAR(64) PRIMARY KEY",
+                    "version INTEGER",
+            };
+            try {
+                executeUpdate(SQLBuilder.buildCreateTable(T_SCHEMA, fields));
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return false;
+            }
+            prepared = true;
+        }
+        return true;
+    }
+    private static final String[] SELECT_COLUMNS = {"version"};
+    private static final String[] INSERT_COLUMNS = {"tbl", "version"};
+    private static final String[] KEY_COLUMNS = {"tbl"};
+    private static final String T_SCHEMA = "t_schema";
+
+    /**
+     *  Get schema version of the table
+     *
+     * @param table - table name
+     * @return 0 for original schema; -1 on DB error
+     */
+    public int getVersion(String table) {
+        if (!prepare()) {
+            // db error
+            return -1;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "tbl", "=", table);
+        SQLStatement statement = SQLBuilder.prepareSelect(false, SELECT_COLUMNS, T_SCHEMA, conditions,
+                null, null, null, 1, 0);
+        try {
+            List<Integer> results = executeQuery(statement, (resultSet, index) -> resultSet.getInt("version"));
+            return results.isEmpty() ? 0 : results.get(0);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     *  Upgrade the table to the version
+     *
+     * @param table   - table name
+     * @param version - new version
+     * @param sqlList - migration
+     * @return false on DB error
+     */
+    public boolean migrate(String table, int version, String... sqlList) {
+        int current = getVersion(table);
+        if (current < 0) {
+            // db error
+            return false;
+        } else if (current >= version) {
+            // already migrated
+            return true;
+        }
+        List<SQLStatement> statements = new ArrayList<>(sqlList.length + 1);
+        for (String sql : sqlList) {
+            statements.add(new SQLStatement(sql, Collections.emptyList()));
+        }
+        Object[] values = {table, version};
+        statements.add(SQLBuilder.prepareUpsert(T_SCHEMA, INSERT_COLUMNS, values, KEY_COLUMNS, SELECT_COLUMNS));
+        try {
+            executeUpdate(statements);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
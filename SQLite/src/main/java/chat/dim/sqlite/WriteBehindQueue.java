@@ -0,0 +1,356 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import chat.dim.daemon.Daemons;
+import chat.dim.sql.SQLStatement;
+
+/**
+ *  Write-behind Queue
+ *  ~~~~~~~~~~~~~~~~~~
+ *
+ *  Mutations are queued and committed by a background thread, in batched
+ *  transactions (up to BATCH_SIZE mutations collected within FLUSH_INTERVAL),
+ *  so a burst of writes costs one fsync instead of one for each.
+ *
+ *  Mutations are committed in the order submitted, by one thread; a
+ *  transaction is all-or-nothing, so after a crash the database contains
+ *  a prefix of the submitted mutations, the order per key is kept.
+ *
+ *  Callers who must wait for durability can await the ticket, or 'flush()';
+ *  when too many mutations pending (QUEUE_CAPACITY), 'submit()' will block
+ *  until the committing thread catches up.
+ */
+public class WriteBehindQueue implements Runnable {
+
+    public static int BATCH_SIZE = 256;     // max mutations in one transaction
+    public static long FLUSH_INTERVAL = 20;  // milliseconds for collecting a batch
+    public static int QUEUE_CAPACITY = 4096; // max mutations waiting for committing
+    public static long SYNC_TIMEOUT = 5000;  // milliseconds for waiting a synchronous write
+
+    private final DatabaseConnector connector;
+
+    private final BlockingQueue<Ticket> pending = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    public WriteBehindQueue(DatabaseConnector sqliteConnector) {
+        super();
+        connector = sqliteConnector;
+    }
+
+    public void start() {
+        forceStop();
+        running = true;
+        Thread thr = Daemons.newThread(this);
+        thr.start();
+        thread = thr;
+    }
+
+    private void forceStop() {
+        running = false;
+        Thread thr = thread;
+        if (thr != null) {
+            // waiting for flushing the pending mutations
+            thread = null;
+            try {
+                thr.join(5000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void stop() {
+        forceStop();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     *  Get count of mutations waiting for committing
+     *
+     * @return queue depth
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     *  Queue the statements to be executed in one transaction,
+     *  blocks while the queue is full
+     *
+     * @param statements - mutation
+     * @return ticket for waiting
+     */
+    public Ticket submit(List<SQLStatement> statements) {
+        return submit(new Ticket(statements, false));
+    }
+
+    /**
+     *  Queue a marker, which is completed after all mutations submitted
+     *  before committed (or failed), without stopping the batching
+     *
+     * @return ticket for waiting
+     */
+    public Ticket mark() {
+        return submit(new Ticket(Collections.emptyList(), false));
+    }
+
+    private Ticket submit(Ticket ticket) {
+        try {
+            while (running) {
+                if (pending.offer(ticket, 100, TimeUnit.MILLISECONDS)) {
+                    return ticket;
+                }
+            }
+        } catch (InterruptedException e) {
+            // not queued, let the caller know it failed
+            Thread.currentThread().interrupt();
+            ticket.complete(false);
+            return ticket;
+        }
+        // not started, execute directly
+        commit(Collections.singletonList(ticket));
+        return ticket;
+    }
+
+    /**
+     *  Wait until all mutations submitted before committed
+     *
+     * @param timeout - milliseconds
+     * @return false on timeout
+     */
+    public boolean flush(long timeout) {
+        Ticket barrier = submit(new Ticket(Collections.emptyList(), true));
+        return barrier.await(timeout) != null;
+    }
+
+    @Override
+    public void run() {
+        List<Ticket> batch = new ArrayList<>();
+        Ticket ticket;
+        long deadline, rest;
+        while (running || !pending.isEmpty()) {
+            try {
+                ticket = pending.poll(1000, TimeUnit.MILLISECONDS);
+                if (ticket == null) {
+                    continue;
+                }
+                batch.add(ticket);
+                // collect more mutations within the time window
+                deadline = System.currentTimeMillis() + FLUSH_INTERVAL;
+                while (batch.size() < BATCH_SIZE && !ticket.isBarrier()) {
+                    ticket = pending.poll();
+                    if (ticket == null) {
+                        rest = deadline - System.currentTimeMillis();
+                        if (rest <= 0 || !running) {
+                            break;
+                        }
+                        ticket = pending.poll(rest, TimeUnit.MILLISECONDS);
+                        if (ticket == null) {
+                            break;
+                        }
+                    }
+                    batch.add(ticket);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                // asked to stop, but the mutations collected and queued
+                // must not be dropped, commit them before exiting
+                running = false;
+                commit(batch);
+                batch.clear();
+                drain(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // keep the thread alive, the rest mutations must go on
+                e.printStackTrace();
+                for (Ticket item : batch) {
+                    if (!item.isDone()) {
+                        item.complete(false);
+                    }
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // commit the rest mutations in the queue
+    private void drain(List<Ticket> batch) {
+        while (pending.drainTo(batch, BATCH_SIZE) > 0) {
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Ticket> batch) {
+        List<SQLStatement> statements = new ArrayList<>();
+        for (Ticket item : batch) {
+            statements.addAll(item.statements);
+        }
+        if (statements.isEmpty() || execute(statements)) {
+            for (Ticket item : batch) {
+                item.complete(true);
+            }
+        } else if (batch.size() == 1) {
+            batch.get(0).complete(false);
+        } else {
+            // some mutation failed, commit them one by one
+            for (Ticket item : batch) {
+                item.complete(item.statements.isEmpty() || execute(item.statements));
+            }
+        }
+    }
+
+    private boolean execute(List<SQLStatement> statements) {
+        try {
+            PooledConnection conn = connector.acquireWriter();
+            try {
+                DatabaseHandler.executeTransaction(conn, statements);
+                return true;
+            } finally {
+                connector.releaseWriter(conn);
+            }
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     *  Durability barrier for a mutation
+     */
+    public static final class Ticket {
+
+        private final List<SQLStatement> statements;
+        private final boolean barrier;  // commit the batch collected so far
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean success = false;
+        private List<Runnable> callbacks = null;
+
+        Ticket(List<SQLStatement> mutation, boolean flushing) {
+            super();
+            statements = mutation;
+            barrier = flushing;
+        }
+
+        boolean isBarrier() {
+            return barrier;
+        }
+
+        void complete(boolean ok) {
+            List<Runnable> actions;
+            synchronized (this) {
+                success = ok;
+                latch.countDown();
+                actions = callbacks;
+                callbacks = null;
+            }
+            if (actions != null) {
+                for (Runnable item : actions) {
+                    run(item);
+                }
+            }
+        }
+
+        private static void run(Runnable callback) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         *  Run the callback after completed, in the committing thread;
+         *  runs immediately if completed already
+         *
+         * @param callback - action after committed or failed
+         */
+        public void then(Runnable callback) {
+            synchronized (this) {
+                if (!isDone()) {
+                    if (callbacks == null) {
+                        callbacks = new ArrayList<>(1);
+                    }
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            run(callback);
+        }
+
+        public boolean isDone() {
+            return latch.getCount() == 0;
+        }
+
+        /**
+         *  Check whether it was completed with error (or not queued)
+         *
+         * @return false on waiting or committed
+         */
+        public boolean isFailed() {
+            return isDone() && !success;
+        }
+
+        /**
+         *  Wait until committed
+         *
+         * @param timeout - milliseconds
+         * @return null on timeout, false on DB error
+         */
+        public Boolean await(long timeout) {
+            try {
+                if (latch.await(timeout, TimeUnit.MILLISECONDS)) {
+                    return success;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+}
@@ -30,11 +30,14 @@
  */
 package chat.dim.sqlite.account;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.dbi.ContactDBI;
 import chat.dim.protocol.ID;
+import chat.dim.sql.SQLBuilder;
 import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
@@ -61,12 +64,19 @@ public class ContactTable extends DataTableHandler<ID> implements ContactDBI {
                     "id INTEGER PRIMARY KEY AUTOINCREMENT",
                     "user VARCHAR(64)",
                     "contact VARCHAR(64)",
-                    "alias VARCHAR(32))",
+                    "alias VARCHAR(32)",
             };
             if (!createTable(T_CONTACT, fields)) {
                 // db error
                 return false;
             }
+            // v1: one record for each (user, contact)
+            if (!migrate(T_CONTACT, 1,
+                    SQLBuilder.buildDeleteDuplicates(T_CONTACT, KEY_COLUMNS),
+                    SQLBuilder.buildCreateIndex("uk_contact_user_contact", T_CONTACT, KEY_COLUMNS, true))) {
+                // db error
+                return false;
+            }
             // prepare data row extractor
             extractor = (resultSet, index) -> {
                 String did = resultSet.getString("contact");
@@ -77,6 +87,7 @@ public class ContactTable extends DataTableHandler<ID> implements ContactDBI {
     }
     private static final String[] SELECT_COLUMNS = {"contact"/*, "alias"*/};
     private static final String[] INSERT_COLUMNS = {"user", "contact"/*, "alias"*/};
+    private static final String[] KEY_COLUMNS = {"user", "contact"};
     private static final String T_CONTACT = "t_contact";
 
     @Override
@@ -92,35 +103,21 @@ public class ContactTable extends DataTableHandler<ID> implements ContactDBI {
 
     @Override
     public boolean saveContacts(List<ID> contacts, ID user) {
-        List<ID> oldContacts = getContacts(user);
-        if (oldContacts == null) {
+        if (!prepare()) {
             // db error
             return false;
         }
-        // 1. delete old records not contain in current contacts
-        for (ID identifier : oldContacts) {
-            if (contacts.contains(identifier)) {
-                continue;
-            }
-            SQLConditions conditions = new SQLConditions();
-            conditions.addCondition(null, "user", "=", user.toString());
-            conditions.addCondition(SQLConditions.Relation.AND, "contact", "=", identifier.toString());
-            if (delete(T_CONTACT, conditions) < 0) {
-                // db error
-                return false;
-            }
-        }
-        // 2. add new users
+        List<SQLStatement> statements = new ArrayList<>();
+        // 1. delete old records
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "user", "=", user.toString());
+        statements.add(SQLBuilder.prepareDelete(T_CONTACT, conditions));
+        // 2. add current contacts, ignore duplicated
         for (ID identifier : contacts) {
-            if (oldContacts.contains(identifier)) {
-                continue;
-            }
             Object[] values = {user.toString(), identifier.toString()};
-            if (insert(T_CONTACT, INSERT_COLUMNS, values) < 0) {
-                // db error
-                return false;
-            }
+            statements.add(SQLBuilder.prepareUpsert(T_CONTACT, INSERT_COLUMNS, values, KEY_COLUMNS, null));
         }
-        return true;
+        // 3. replace them in one transaction
+        return write(statements);
     }
 }
@@ -30,9 +30,8 @@
  */
 package chat.dim.sqlite.account;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import chat.dim.dbi.DocumentDBI;
 import chat.dim.mkm.DocumentUtils;
@@ -40,7 +39,9 @@ import chat.dim.protocol.Document;
 import chat.dim.protocol.DocumentType;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.TransportableData;
+import chat.dim.sql.SQLBuilder;
 import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
@@ -62,15 +63,7 @@ public class DocumentTable extends DataTableHandler<Document> implements Documen
 
     private boolean prepare() {
         if (extractor == null) {
-            // create table if not exists
-            String[] fields = {
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
-                    "did VARCHAR(64)",
-                    "type VARCHAR(8)",
-                    "data TEXT",
-                    "signature VARCHAR(88)",
-            };
-            if (!createTable(T_DOCUMENT, fields)) {
+            if (!prepareTable()) {
                 // db error
                 return false;
             }
@@ -82,15 +75,7 @@ public class DocumentTable extends DataTableHandler<Document> implements Documen
                 String signature = resultSet.getString("signature");
                 ID identifier = ID.parse(did);
                 assert identifier != null : "did error: " + did;
-                if (type == null || type.length() == 0 || type.equals("*")) {
-                    if (identifier.isGroup()) {
-                        type = DocumentType.BULLETIN;
-                    } else if (identifier.isUser()) {
-                        type = DocumentType.VISA;
-                    } else {
-                        type = DocumentType.PROFILE;
-                    }
-                }
+                type = normalizeType(type, identifier);
                 Document doc;
                 if (data == null || signature == null) {
                     doc = Document.create(type);
@@ -106,9 +91,79 @@ public class DocumentTable extends DataTableHandler<Document> implements Documen
         }
         return true;
     }
+    /**
+     *  Get document type, the same as it's saved and loaded;
+     *  a document without type is taken as the default one for the entity
+     *
+     * @param doc        - entity document
+     * @param identifier - entity ID
+     * @return 'bulletin' for group, 'visa' for user, 'profile' for others
+     */
+    public static String getDocumentType(Document doc, ID identifier) {
+        return normalizeType(DocumentUtils.getDocumentType(doc), identifier);
+    }
+
+    private static String normalizeType(String type, ID identifier) {
+        if (type != null && type.length() > 0 && !type.equals("*")) {
+            return type;
+        }
+        return getDefaultType(identifier);
+    }
+
+    private static String getDefaultType(ID identifier) {
+        if (identifier.isGroup()) {
+            return DocumentType.BULLETIN;
+        } else if (identifier.isUser()) {
+            return DocumentType.VISA;
+        } else {
+            return DocumentType.PROFILE;
+        }
+    }
+
     private static final String[] SELECT_COLUMNS = {"did", "type", "data", "signature"};
     private static final String[] INSERT_COLUMNS = {"did", "type", "data", "signature"};
-    private static final String T_DOCUMENT = "t_document";
+    private static final String[] UPDATE_COLUMNS = {"data", "signature"};
+    private static final String[] KEY_COLUMNS = {"did", "type"};
+    static final String T_DOCUMENT = "t_document";
+
+    static final String[] FIELDS = {
+            "id INTEGER PRIMARY KEY AUTOINCREMENT",
+            "did VARCHAR(64)",
+            "type VARCHAR(8)",
+            "data TEXT",
+            "signature VARCHAR(88)",
+    };
+
+    // v1: one record for each (did, type), for upserting
+    static final String[] MIGRATION_V1 = {
+            SQLBuilder.buildDeleteDuplicates(T_DOCUMENT, KEY_COLUMNS),
+            SQLBuilder.buildCreateIndex("uk_document_did_type", T_DOCUMENT, KEY_COLUMNS, true),
+    };
+
+    // v2: NULL type won't conflict with the unique index, so the legacy
+    //     rows are normalized to '' (the '' rows were saved after v1,
+    //     so they win, and the last NULL row wins the other NULL rows);
+    //     new rows are saved with the normalized type,
+    //     and the '' row is removed when the default type saved
+    static final String[] MIGRATION_V2 = {
+            "DELETE FROM " + T_DOCUMENT + " WHERE type IS NULL" +
+                    " AND did IN (SELECT did FROM " + T_DOCUMENT + " WHERE type='')",
+            "DELETE FROM " + T_DOCUMENT + " WHERE type IS NULL" +
+                    " AND id NOT IN (SELECT MAX(id) FROM " + T_DOCUMENT + " WHERE type IS NULL GROUP BY did)",
+            "UPDATE " + T_DOCUMENT + " SET type='' WHERE type IS NULL",
+    };
+
+    /**
+     *  Create the table if not exists, and upgrade it to the last version
+     *
+     * @return false on DB error
+     */
+    boolean prepareTable() {
+        // create table if not exists
+        return createTable(T_DOCUMENT, FIELDS)
+                && migrate(T_DOCUMENT, 1, MIGRATION_V1)
+                && migrate(T_DOCUMENT, 2, MIGRATION_V2);
+    }
 
     @Override
     public List<Document> getDocuments(ID identifier) {
@@ -124,62 +179,33 @@ public class DocumentTable extends DataTableHandler<Document> implements Documen
 
     @Override
     public boolean saveDocument(Document doc, ID entity) {
-        ID did = ID.parse(doc.get("did"));
-        String type = DocumentUtils.getDocumentType(doc);
-        if (type == null) {
-            type = "";
-        }
-        // check old documents
-        List<Document> documents = getDocuments(entity);
-        if (documents != null) {
-            for (Document item : documents) {
-                if (did.equals(item.get("did")) &&
-                        type.equals(DocumentUtils.getDocumentType(item))) {
-                    // old record found, update it
-                    return updateDocument(doc, entity);
-                }
-            }
-        }
-        // add new record
-        return insertDocument(doc, entity);
-    }
-
-    protected boolean updateDocument(Document doc, ID entity) {
         if (!prepare()) {
             // db error
             return false;
         }
         ID did = ID.parse(doc.get("did"));
         assert did.getAddress().equals(entity.getAddress()) : "document ID not matched: " + entity + ", " + doc;
-        String type = DocumentUtils.getDocumentType(doc);
+        String type = getDocumentType(doc, entity);
         String data = doc.getString("data", "");
         String signature = doc.getString("signature", "");
-        // build conditions
-        SQLConditions conditions = new SQLConditions();
-        // TODO: add field 'vid' for terminal
-        conditions.addCondition(null, "did", "=", entity.toString());
-        conditions.addCondition(SQLConditions.Relation.AND, "type", "=", type);
-        // fill values
-        Map<String, Object> values = new HashMap<>();
-        values.put("data", data);
-        values.put("signature", signature);
-        return update(T_DOCUMENT, values, conditions) > 0;
+        return save(entity.toString(), type, data, signature, type.equals(getDefaultType(entity)));
     }
 
-    protected boolean insertDocument(Document doc, ID entity) {
-        if (!prepare()) {
-            // db error
-            return false;
-        }
-        ID did = ID.parse(doc.get("did"));
-        assert did.getAddress().equals(entity.getAddress()) : "document ID not matched: " + entity + ", " + doc;
-        String type = DocumentUtils.getDocumentType(doc);
-        String data = doc.getString("data", "");
-        String signature = doc.getString("signature", "");
-        // new values
+    boolean save(String did, String type, String data, String signature, boolean isDefaultType) {
+        List<SQLStatement> statements = new ArrayList<>(2);
+        // INSERT ... ON CONFLICT(did, type) DO UPDATE SET data, signature
         // TODO: add field 'vid' for terminal
-        Object[] values = {entity.toString(), type, data, signature};
-        return insert(T_DOCUMENT, INSERT_COLUMNS, values) > 0;
+        Object[] values = {did, type, data, signature};
+        statements.add(SQLBuilder.prepareUpsert(T_DOCUMENT, INSERT_COLUMNS, values, KEY_COLUMNS, UPDATE_COLUMNS));
+        if (isDefaultType) {
+            // the legacy row without type is loaded as the default type,
+            // remove it, or there would be two documents with the same type
+            SQLConditions conditions = new SQLConditions();
+            conditions.addCondition(null, "did", "=", did);
+            conditions.addCondition(SQLConditions.Relation.AND, "type", "=", "");
+            statements.add(SQLBuilder.prepareDelete(T_DOCUMENT, conditions));
+        }
+        return write(statements);
     }
 
 }
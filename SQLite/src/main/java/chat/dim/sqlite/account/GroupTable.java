@@ -30,52 +30,194 @@
  */
 package chat.dim.sqlite.account;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import chat.dim.dbi.GroupDBI;
 import chat.dim.protocol.ID;
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.type.Pair;
 
-public class GroupTable extends DataTableHandler<ID> implements GroupDBI {
+/**
+ *  Group members & administrators
+ *
+ *  One row for each (group, member), so all members of a group can be
+ *  replaced in one transaction, and members of all groups can be loaded
+ *  in one query when warming up.
+ */
+public class GroupTable extends DataTableHandler<Pair<ID, ID>> implements GroupDBI {
+
+    private DataRowExtractor<Pair<ID, ID>> extractor;
 
     public GroupTable(DatabaseConnector connector) {
         super(connector);
+        // lazy load
+        extractor = null;
     }
 
     @Override
-    protected DataRowExtractor<ID> getDataRowExtractor() {
-        return null;
+    protected DataRowExtractor<Pair<ID, ID>> getDataRowExtractor() {
+        return extractor;
+    }
+
+    private boolean prepare() {
+        if (extractor == null) {
+            // create table if not exists
+            String[] fields = {
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
+                    "gid VARCHAR(64)",
+                    "member VARCHAR(64)",
+                    "role CHAR(1)",
+            };
+            if (!createTable(T_MEMBER, fields)) {
+                // db error
+                return false;
+            }
+            // create index for searching by group
+            if (!createIndex("idx_member_gid", T_MEMBER, new String[]{"gid", "role"})) {
+                // db error
+                return false;
+            }
+            // prepare data row extractor
+            extractor = (resultSet, index) -> {
+                ID group = ID.parse(resultSet.getString("gid"));
+                ID member = ID.parse(resultSet.getString("member"));
+                return new Pair<>(group, member);
+            };
+        }
+        return true;
     }
+    private static final String[] SELECT_COLUMNS = {"gid", "member"};
+    private static final String[] INSERT_COLUMNS = {"gid", "member", "role"};
+    private static final String T_MEMBER = "t_member";
+
+    private static final String MEMBER = "M";
+    private static final String ADMIN = "A";
 
     @Override
     public ID getFounder(ID group) {
+        // founder is recorded in the bulletin document
         return null;
     }
 
     @Override
     public ID getOwner(ID group) {
+        // owner is recorded in the bulletin document
         return null;
     }
 
     @Override
     public List<ID> getMembers(ID group) {
-        return null;
+        return loadUsers(group, MEMBER);
     }
 
     @Override
     public boolean saveMembers(List<ID> members, ID group) {
-        return false;
+        return saveUsers(members, group, MEMBER);
     }
 
     @Override
     public List<ID> getAdministrators(ID group) {
-        return null;
+        return loadUsers(group, ADMIN);
     }
 
     @Override
     public boolean saveAdministrators(List<ID> members, ID group) {
-        return false;
+        return saveUsers(members, group, ADMIN);
+    }
+
+    /**
+     *  Load members of all groups in one query
+     *
+     * @return group => members; null on DB error
+     */
+    public Map<ID, List<ID>> loadAllMembers() {
+        return loadAllUsers(MEMBER);
+    }
+
+    /**
+     *  Load administrators of all groups in one query
+     *
+     * @return group => administrators; null on DB error
+     */
+    public Map<ID, List<ID>> loadAllAdministrators() {
+        return loadAllUsers(ADMIN);
+    }
+
+    private List<ID> loadUsers(ID group, String role) {
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "gid", "=", group.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "role", "=", role);
+        List<Pair<ID, ID>> results = select(T_MEMBER, SELECT_COLUMNS, conditions,
+                null, null, "id", -1, 0);
+        if (results == null) {
+            return null;
+        }
+        List<ID> users = new ArrayList<>(results.size());
+        for (Pair<ID, ID> item : results) {
+            if (item.second != null) {
+                users.add(item.second);
+            }
+        }
+        return users;
+    }
+
+    private Map<ID, List<ID>> loadAllUsers(String role) {
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "role", "=", role);
+        List<Pair<ID, ID>> results = select(T_MEMBER, SELECT_COLUMNS, conditions,
+                null, null, "id", -1, 0);
+        if (results == null) {
+            return null;
+        }
+        Map<ID, List<ID>> groups = new HashMap<>();
+        List<ID> users;
+        for (Pair<ID, ID> item : results) {
+            if (item.first == null || item.second == null) {
+                continue;
+            }
+            users = groups.get(item.first);
+            if (users == null) {
+                users = new ArrayList<>();
+                groups.put(item.first, users);
+            }
+            users.add(item.second);
+        }
+        return groups;
+    }
+
+    private boolean saveUsers(List<ID> users, ID group, String role) {
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        List<SQLStatement> statements = new ArrayList<>(users.size() + 1);
+        // 1. delete old records
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "gid", "=", group.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "role", "=", role);
+        statements.add(SQLBuilder.prepareDelete(T_MEMBER, conditions));
+        // 2. add current users, executed as one batch
+        for (ID identifier : users) {
+            Object[] values = {group.toString(), identifier.toString(), role};
+            statements.add(SQLBuilder.prepareInsert(T_MEMBER, INSERT_COLUMNS, values));
+        }
+        // 3. replace them in one transaction
+        return write(statements);
     }
 }
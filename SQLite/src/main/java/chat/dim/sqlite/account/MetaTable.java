@@ -30,6 +30,7 @@
  */
 package chat.dim.sqlite.account;
 
+import java.util.Collections;
 import java.util.List;
 
 import chat.dim.dbi.MetaDBI;
@@ -39,6 +40,7 @@ import chat.dim.protocol.Meta;
 import chat.dim.protocol.MetaVersion;
 import chat.dim.protocol.PublicKey;
 import chat.dim.protocol.TransportableData;
+import chat.dim.sql.SQLBuilder;
 import chat.dim.sql.SQLConditions;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
@@ -118,13 +120,6 @@ public class MetaTable extends DataTableHandler<Meta> implements MetaDBI {
             // db error
             return false;
         }
-        // make sure old records not exists
-        Meta old = getMeta(entity);
-        if (old != null) {
-            // meta info won't changed, no need to update
-            return false;
-        }
-
         int type = MetaVersion.parseInt(meta.getType(), 0);
         String json = JSON.encode(meta.getPublicKey());
         String seed;
@@ -138,6 +133,10 @@ public class MetaTable extends DataTableHandler<Meta> implements MetaDBI {
         }
 
         Object[] values = {entity.toString(), type, json, seed, fingerprint};
-        return insert(T_META, INSERT_COLUMNS, values) > 0;
+        // meta info won't changed, insert only when old record not exists
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "did", "=", entity.toString());
+        return write(Collections.singletonList(
+                SQLBuilder.prepareInsertIfAbsent(T_META, INSERT_COLUMNS, values, conditions)));
     }
 }
@@ -30,6 +30,7 @@
  */
 package chat.dim.sqlite.account;
 
+import java.util.Collections;
 import java.util.List;
 
 import chat.dim.dbi.PrivateKeyDBI;
@@ -37,6 +38,7 @@ import chat.dim.format.JSON;
 import chat.dim.protocol.DecryptKey;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.PrivateKey;
+import chat.dim.sql.SQLBuilder;
 import chat.dim.sql.SQLConditions;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
@@ -134,7 +136,9 @@ public class PrivateKeyTable extends DataTableHandler<PrivateKey> implements Pri
         String json = JSON.encode(key);
 
         Object[] values = {user.toString(), json, type, sign, decrypt};
-        return insert(T_PRIVATE_KEY, INSERT_COLUMNS, values) > 0;
+        // private keys must be durable before reporting saved
+        return write(Collections.singletonList(
+                SQLBuilder.prepareInsert(T_PRIVATE_KEY, INSERT_COLUMNS, values)), true);
     }
 
     @Override
@@ -30,31 +30,118 @@
  */
 package chat.dim.sqlite.message;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import chat.dim.dbi.CipherKeyDBI;
+import chat.dim.format.JSON;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.SymmetricKey;
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.type.Triplet;
+
+public class CipherKeyTable extends DataTableHandler<Triplet<ID, ID, SymmetricKey>> implements CipherKeyDBI {
 
-public class CipherKeyTable extends DataTableHandler<SymmetricKey> implements CipherKeyDBI {
+    private DataRowExtractor<Triplet<ID, ID, SymmetricKey>> extractor;
 
     public CipherKeyTable(DatabaseConnector connector) {
         super(connector);
+        // lazy load
+        extractor = null;
     }
 
     @Override
-    protected DataRowExtractor<SymmetricKey> getDataRowExtractor() {
-        return null;
+    protected DataRowExtractor<Triplet<ID, ID, SymmetricKey>> getDataRowExtractor() {
+        return extractor;
     }
 
+    private boolean prepare() {
+        if (extractor == null) {
+            // create table if not exists
+            String[] fields = {
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
+                    "sender VARCHAR(64)",
+                    "receiver VARCHAR(64)",
+                    "pwd TEXT",
+                    "time INTEGER",
+            };
+            if (!createTable(T_CIPHER_KEY, fields)) {
+                // db error
+                return false;
+            }
+            // create index for searching by direction
+            if (!createIndex("idx_cipher_key_direction", T_CIPHER_KEY, new String[]{"sender", "receiver"})) {
+                // db error
+                return false;
+            }
+            // prepare data row extractor
+            extractor = (resultSet, index) -> {
+                ID sender = ID.parse(resultSet.getString("sender"));
+                ID receiver = ID.parse(resultSet.getString("receiver"));
+                String json = resultSet.getString("pwd");
+                SymmetricKey key = SymmetricKey.parse(JSON.decode(json));
+                return new Triplet<>(sender, receiver, key);
+            };
+        }
+        return true;
+    }
+    private static final String[] SELECT_COLUMNS = {"sender", "receiver", "pwd"};
+    private static final String[] INSERT_COLUMNS = {"sender", "receiver", "pwd", "time"};
+    private static final String T_CIPHER_KEY = "t_cipher_key";
+
     @Override
     public SymmetricKey getCipherKey(ID sender, ID receiver, boolean generate) {
-        return null;
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "sender", "=", sender.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "receiver", "=", receiver.toString());
+        List<Triplet<ID, ID, SymmetricKey>> results = select(T_CIPHER_KEY, SELECT_COLUMNS, conditions,
+                null, null, "id DESC", 1, 0);
+        // return first record only, new key will be generated by the caller
+        return results == null || results.size() == 0 ? null : results.get(0).third;
     }
 
     @Override
     public void cacheCipherKey(ID sender, ID receiver, SymmetricKey key) {
+        if (!prepare()) {
+            // db error
+            return;
+        }
+        List<SQLStatement> statements = new ArrayList<>(2);
+        // 1. delete old key
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "sender", "=", sender.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "receiver", "=", receiver.toString());
+        statements.add(SQLBuilder.prepareDelete(T_CIPHER_KEY, conditions));
+        // 2. add new key
+        long now = System.currentTimeMillis() / 1000;
+        Object[] values = {sender.toString(), receiver.toString(), JSON.encode(key), now};
+        statements.add(SQLBuilder.prepareInsert(T_CIPHER_KEY, INSERT_COLUMNS, values));
+        write(statements);
+    }
 
+    /**
+     *  Load the cipher keys saved after the time in one query
+     *
+     * @param after - timestamp in seconds, 0 means all
+     * @return list of (sender, receiver, key); null on DB error
+     */
+    public List<Triplet<ID, ID, SymmetricKey>> loadCipherKeys(long after) {
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "time", ">", after);
+        return select(T_CIPHER_KEY, SELECT_COLUMNS, conditions,
+                null, null, "id", -1, 0);
     }
 }
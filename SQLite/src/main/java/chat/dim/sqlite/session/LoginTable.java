@@ -30,10 +30,18 @@
  */
 package chat.dim.sqlite.session;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import chat.dim.dbi.LoginDBI;
+import chat.dim.format.JSON;
+import chat.dim.protocol.Content;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.LoginCommand;
 import chat.dim.protocol.ReliableMessage;
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLConditions;
+import chat.dim.sql.SQLStatement;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
@@ -41,22 +49,108 @@ import chat.dim.type.Pair;
 
 public class LoginTable extends DataTableHandler<Pair<LoginCommand, ReliableMessage>> implements LoginDBI {
 
+    private DataRowExtractor<Pair<LoginCommand, ReliableMessage>> extractor;
+
     public LoginTable(DatabaseConnector sqliteConnector) {
         super(sqliteConnector);
+        // lazy load
+        extractor = null;
     }
 
     @Override
     protected DataRowExtractor<Pair<LoginCommand, ReliableMessage>> getDataRowExtractor() {
-        return null;
+        return extractor;
+    }
+
+    private boolean prepare() {
+        if (extractor == null) {
+            // create table if not exists
+            String[] fields = {
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
+                    "did VARCHAR(64)",
+                    "cmd TEXT",
+                    "msg TEXT",
+                    "time INTEGER",
+            };
+            if (!createTable(T_LOGIN, fields)) {
+                // db error
+                return false;
+            }
+            // create index for searching by user
+            if (!createIndex("idx_login_did", T_LOGIN, new String[]{"did"})) {
+                // db error
+                return false;
+            }
+            // prepare data row extractor
+            extractor = (resultSet, index) -> {
+                String cmd = resultSet.getString("cmd");
+                String msg = resultSet.getString("msg");
+                Content content = Content.parse(JSON.decode(cmd));
+                ReliableMessage rMsg = ReliableMessage.parse(JSON.decode(msg));
+                if (content instanceof LoginCommand) {
+                    return new Pair<>((LoginCommand) content, rMsg);
+                }
+                assert false : "login command error: " + cmd;
+                return new Pair<>(null, rMsg);
+            };
+        }
+        return true;
     }
+    private static final String[] SELECT_COLUMNS = {"cmd", "msg"};
+    private static final String[] INSERT_COLUMNS = {"did", "cmd", "msg", "time"};
+    private static final String T_LOGIN = "t_login";
 
     @Override
     public Pair<LoginCommand, ReliableMessage> getLoginCommandMessage(ID identifier) {
-        return null;
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "did", "=", identifier.toString());
+        List<Pair<LoginCommand, ReliableMessage>> results = select(T_LOGIN, SELECT_COLUMNS, conditions,
+                null, null, "id DESC", 1, 0);
+        // return first record only
+        return results == null || results.size() == 0 ? null : results.get(0);
     }
 
     @Override
     public boolean saveLoginCommandMessage(ID identifier, LoginCommand cmd, ReliableMessage msg) {
-        return false;
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        List<SQLStatement> statements = new ArrayList<>(2);
+        // 1. delete old record
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "did", "=", identifier.toString());
+        statements.add(SQLBuilder.prepareDelete(T_LOGIN, conditions));
+        // 2. add new record
+        long now = System.currentTimeMillis() / 1000;
+        Object[] values = {identifier.toString(), JSON.encode(cmd.toMap()), JSON.encode(msg.toMap()), now};
+        statements.add(SQLBuilder.prepareInsert(T_LOGIN, INSERT_COLUMNS, values));
+        // no memory cache in front, wait for committed to read it back
+        return write(statements, true);
+    }
+
+    /**
+     *  Load the login commands saved after the time in one query
+     *
+     *  NOTICE: this table keeps no memory cache, so nothing here calls it;
+     *          it's for the application to warm its own session cache
+     *          (e.g. online users of a station) once at startup
+     *
+     * @param after - timestamp in seconds, 0 means all
+     * @return list of (command, message); null on DB error
+     */
+    public List<Pair<LoginCommand, ReliableMessage>> loadLoginCommandMessages(long after) {
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "time", ">", after);
+        return select(T_LOGIN, SELECT_COLUMNS, conditions,
+                null, null, "id", -1, 0);
     }
 }
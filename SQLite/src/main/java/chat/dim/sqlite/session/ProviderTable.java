@@ -30,45 +30,118 @@
  */
 package chat.dim.sqlite.session;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import chat.dim.dbi.ProviderDBI;
 import chat.dim.dbi.ProviderInfo;
 import chat.dim.protocol.ID;
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLConditions;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
-import chat.dim.type.Triplet;
 
-public class ProviderTable extends DataTableHandler<Set<Triplet<String, Integer, ID>>> implements ProviderDBI {
+/**
+ *  Service Providers
+ *
+ *  NOTICE: no memory cache in front of this table, so the mutations wait for
+ *          committed, to read them back at once
+ */
+public class ProviderTable extends DataTableHandler<ProviderInfo> implements ProviderDBI {
+
+    private DataRowExtractor<ProviderInfo> extractor;
 
     public ProviderTable(DatabaseConnector sqliteConnector) {
         super(sqliteConnector);
+        // lazy load
+        extractor = null;
     }
 
     @Override
-    protected DataRowExtractor<Set<Triplet<String, Integer, ID>>> getDataRowExtractor() {
-        return null;
+    protected DataRowExtractor<ProviderInfo> getDataRowExtractor() {
+        return extractor;
+    }
+
+    private boolean prepare() {
+        if (extractor == null) {
+            // create table if not exists
+            String[] fields = {
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
+                    "pid VARCHAR(64)",
+                    "chosen INTEGER",
+            };
+            if (!createTable(T_PROVIDER, fields)) {
+                // db error
+                return false;
+            }
+            // create index for searching by provider
+            if (!createIndex("idx_provider_pid", T_PROVIDER, new String[]{"pid"})) {
+                // db error
+                return false;
+            }
+            // prepare data row extractor
+            extractor = (resultSet, index) -> {
+                ID pid = ID.parse(resultSet.getString("pid"));
+                int chosen = resultSet.getInt("chosen");
+                return new ProviderInfo(pid, chosen);
+            };
+        }
+        return true;
     }
+    private static final String[] SELECT_COLUMNS = {"pid", "chosen"};
+    private static final String[] INSERT_COLUMNS = {"pid", "chosen"};
+    private static final String T_PROVIDER = "t_provider";
 
     @Override
     public List<ProviderInfo> allProviders() {
-        return null;
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        // SELECT pid, chosen FROM t_provider ORDER BY chosen DESC
+        return select(T_PROVIDER, SELECT_COLUMNS, null,
+                null, null, "chosen DESC", -1, 0);
     }
 
     @Override
     public boolean addProvider(ID identifier, int chosen) {
-        return false;
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        Object[] values = {identifier.toString(), chosen};
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "pid", "=", identifier.toString());
+        return write(Collections.singletonList(
+                SQLBuilder.prepareInsertIfAbsent(T_PROVIDER, INSERT_COLUMNS, values, conditions)), true);
     }
 
     @Override
     public boolean updateProvider(ID identifier, int chosen) {
-        return false;
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put("chosen", chosen);
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "pid", "=", identifier.toString());
+        return write(Collections.singletonList(
+                SQLBuilder.prepareUpdate(T_PROVIDER, values, conditions)), true);
     }
 
     @Override
     public boolean removeProvider(ID identifier) {
-        return false;
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "pid", "=", identifier.toString());
+        return write(Collections.singletonList(
+                SQLBuilder.prepareDelete(T_PROVIDER, conditions)), true);
     }
 }
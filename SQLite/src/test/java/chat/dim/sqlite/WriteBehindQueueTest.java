@@ -0,0 +1,232 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sql.SQLStatement;
+
+public class WriteBehindQueueTest {
+
+    private static final int BATCH_SIZE = WriteBehindQueue.BATCH_SIZE;
+    private static final long FLUSH_INTERVAL = WriteBehindQueue.FLUSH_INTERVAL;
+    private static final int QUEUE_CAPACITY = WriteBehindQueue.QUEUE_CAPACITY;
+
+    private File dbFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dbFile = File.createTempFile("wbq", ".db");
+    }
+
+    @After
+    public void tearDown() {
+        WriteBehindQueue.BATCH_SIZE = BATCH_SIZE;
+        WriteBehindQueue.FLUSH_INTERVAL = FLUSH_INTERVAL;
+        WriteBehindQueue.QUEUE_CAPACITY = QUEUE_CAPACITY;
+        Assert.assertTrue(dbFile.delete());
+    }
+
+    @Test
+    public void testOrdering() throws SQLException {
+        DatabaseConnector connector = new DatabaseConnector(dbFile.getPath());
+        DatabaseHandler<Integer> handler = createTable(connector);
+        WriteBehindQueue.BATCH_SIZE = 16;
+        WriteBehindQueue queue = new WriteBehindQueue(connector);
+        queue.start();
+        for (int i = 0; i < 100; ++i) {
+            // row order, and the last write of the same key wins
+            queue.submit(Collections.singletonList(insert(i)));
+            queue.submit(Collections.singletonList(upsert(i)));
+        }
+        Assert.assertTrue(queue.flush(5000));
+        Assert.assertEquals(0, queue.getPendingCount());
+        List<Integer> rows = handler.executeQuery("SELECT v FROM t_test ORDER BY id", (result, index) -> result.getInt("v"));
+        Assert.assertEquals(101, rows.size());
+        Assert.assertEquals(99, (int) rows.get(0));
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals(i, (int) rows.get(i + 1));
+        }
+        queue.stop();
+        connector.destroy();
+    }
+
+    @Test
+    public void testFlushAndMarker() throws SQLException {
+        DatabaseConnector connector = new DatabaseConnector(dbFile.getPath());
+        createTable(connector);
+        WriteBehindQueue.FLUSH_INTERVAL = 200;
+        WriteBehindQueue queue = new WriteBehindQueue(connector);
+        queue.start();
+        List<WriteBehindQueue.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            tickets.add(queue.submit(Collections.singletonList(insert(i))));
+        }
+        // the marker is completed after the mutations before it
+        AtomicInteger done = new AtomicInteger(-1);
+        queue.mark().then(() -> {
+            int count = 0;
+            for (WriteBehindQueue.Ticket item : tickets) {
+                if (item.isDone() && !item.isFailed()) {
+                    ++count;
+                }
+            }
+            done.set(count);
+        });
+        // the barrier won't wait for the whole flush interval
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(queue.flush(5000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(10, done.get());
+        // completed already, run immediately
+        AtomicInteger after = new AtomicInteger(0);
+        tickets.get(0).then(after::incrementAndGet);
+        Assert.assertEquals(1, after.get());
+        queue.stop();
+        connector.destroy();
+    }
+
+    @Test
+    public void testInterruptedWhileCollecting() throws SQLException, InterruptedException {
+        Thread tester = Thread.currentThread();
+        AtomicReference<Thread> committer = new AtomicReference<>();
+        DatabaseConnector connector = new DatabaseConnector(dbFile.getPath()) {
+            @Override
+            PooledConnection acquireWriter() throws SQLException {
+                if (Thread.currentThread() != tester) {
+                    committer.compareAndSet(null, Thread.currentThread());
+                }
+                return super.acquireWriter();
+            }
+        };
+        DatabaseHandler<Integer> handler = createTable(connector);
+        WriteBehindQueue.FLUSH_INTERVAL = 60000;
+        WriteBehindQueue queue = new WriteBehindQueue(connector);
+        queue.start();
+        // find the committing thread
+        queue.submit(Collections.singletonList(insert(0)));
+        Assert.assertTrue(queue.flush(5000));
+        Assert.assertNotNull(committer.get());
+        // collecting a batch for a long time
+        WriteBehindQueue.Ticket ticket = queue.submit(Collections.singletonList(insert(1)));
+        Thread.sleep(100);
+        committer.get().interrupt();
+        // the collected mutation is committed, not dropped
+        Assert.assertEquals(Boolean.TRUE, ticket.await(5000));
+        committer.get().join(5000);
+        Assert.assertFalse(committer.get().isAlive());
+        Assert.assertFalse(queue.isRunning());
+        // executed directly after stopped
+        Assert.assertEquals(Boolean.TRUE, queue.submit(Collections.singletonList(insert(2))).await(0));
+        List<Integer> rows = handler.executeQuery("SELECT v FROM t_test ORDER BY id", (result, index) -> result.getInt("v"));
+        Assert.assertEquals(3, rows.size());
+        connector.destroy();
+    }
+
+    @Test
+    public void testInterruptedWhileSubmitting() throws SQLException, InterruptedException {
+        CountDownLatch blocking = new CountDownLatch(1);
+        DatabaseConnector connector = new DatabaseConnector(dbFile.getPath()) {
+            @Override
+            PooledConnection acquireWriter() throws SQLException {
+                try {
+                    blocking.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return super.acquireWriter();
+            }
+        };
+        createTable(connector);
+        WriteBehindQueue.QUEUE_CAPACITY = 1;
+        WriteBehindQueue.FLUSH_INTERVAL = 0;
+        WriteBehindQueue queue = new WriteBehindQueue(connector);
+        queue.start();
+        // the first one is committing (blocked), the second one fills the queue
+        WriteBehindQueue.Ticket first = queue.submit(Collections.singletonList(insert(1)));
+        Thread.sleep(100);
+        WriteBehindQueue.Ticket second = queue.submit(Collections.singletonList(insert(2)));
+        AtomicReference<WriteBehindQueue.Ticket> third = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            third.set(queue.submit(Collections.singletonList(insert(3))));
+            interrupted.set(Thread.currentThread().isInterrupted());
+        });
+        thread.start();
+        Thread.sleep(100);
+        thread.interrupt();
+        thread.join(5000);
+        Assert.assertTrue(third.get().isFailed());
+        Assert.assertTrue(interrupted.get());
+        blocking.countDown();
+        Assert.assertEquals(Boolean.TRUE, first.await(5000));
+        Assert.assertEquals(Boolean.TRUE, second.await(5000));
+        queue.stop();
+        connector.destroy();
+    }
+
+    //
+    //  Table
+    //
+
+    private static DatabaseHandler<Integer> createTable(DatabaseConnector connector) throws SQLException {
+        DatabaseHandler<Integer> handler = new DatabaseHandler<>(connector);
+        handler.executeUpdate("CREATE TABLE IF NOT EXISTS t_test (id INTEGER PRIMARY KEY, k INTEGER, v INTEGER)");
+        return handler;
+    }
+
+    private static SQLStatement insert(int value) {
+        Object[] values = {-value, value};
+        return SQLBuilder.prepareInsert("t_test", new String[]{"k", "v"}, values);
+    }
+
+    // the same key for all
+    private static SQLStatement upsert(int value) {
+        List<Object> values = Arrays.asList(0, value);
+        return new SQLStatement("INSERT OR REPLACE INTO t_test (id, k, v) VALUES (0, ?, ?)", values);
+    }
+}
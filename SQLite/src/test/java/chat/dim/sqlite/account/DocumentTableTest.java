@@ -0,0 +1,174 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite.account;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import chat.dim.sql.SQLBuilder;
+import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.sqlite.SchemaTable;
+
+public class DocumentTableTest {
+
+    private static final boolean WRITE_BEHIND = DatabaseConnector.WRITE_BEHIND;
+
+    private File dbFile;
+    private DatabaseConnector connector;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        DatabaseConnector.WRITE_BEHIND = false;
+        dbFile = File.createTempFile("document", ".db");
+        connector = new DatabaseConnector(dbFile.getPath());
+        // legacy table, without unique index
+        execute(SQLBuilder.buildCreateTable(DocumentTable.T_DOCUMENT, DocumentTable.FIELDS));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connector.destroy();
+        DatabaseConnector.WRITE_BEHIND = WRITE_BEHIND;
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void testMigrateLegacyTable() throws SQLException {
+        insert("a@address", null, "a1");
+        insert("a@address", null, "a2");
+        insert("a@address", null, "a3");
+        insert("b@address", null, "b1");
+        insert("b@address", "visa", "b2");
+        insert("b@address", null, "b3");
+        insert("b@address", "visa", "b4");
+
+        DocumentTable table = new DocumentTable(connector);
+        Assert.assertTrue(table.prepareTable());
+        Assert.assertEquals(2, new SchemaTable(connector).getVersion(DocumentTable.T_DOCUMENT));
+        // the last row of each (did, type) is kept, NULL is normalized to ''
+        Assert.assertEquals(Arrays.asList("a@address::a3", "b@address::b3", "b@address:visa:b4"), rows());
+        // migrated once
+        Assert.assertTrue(table.prepareTable());
+        Assert.assertEquals(3, rows().size());
+    }
+
+    @Test
+    public void testMigrateFromV1() throws SQLException {
+        insert("a@address", null, "a1");
+        insert("a@address", null, "a2");
+
+        DocumentTable table = new DocumentTable(connector);
+        Assert.assertTrue(table.createTable(DocumentTable.T_DOCUMENT, DocumentTable.FIELDS));
+        Assert.assertTrue(table.migrate(DocumentTable.T_DOCUMENT, 1, DocumentTable.MIGRATION_V1));
+        Assert.assertEquals(Arrays.asList("a@address:null:a2"), rows());
+        // NULL type won't conflict with the unique index
+        insert("a@address", null, "a3");
+        insert("a@address", null, "a4");
+        insert("b@address", null, "b1");
+        insert("b@address", "", "b2");
+        insert("b@address", null, "b3");
+        insert("c@address", "visa", "c1");
+        insert("c@address", null, "c2");
+
+        Assert.assertTrue(table.prepareTable());
+        Assert.assertEquals(2, new SchemaTable(connector).getVersion(DocumentTable.T_DOCUMENT));
+        // the last NULL row wins the other NULL rows, the '' row wins NULL rows
+        Assert.assertEquals(Arrays.asList("a@address::a4", "b@address::b2",
+                "c@address::c2", "c@address:visa:c1"), rows());
+    }
+
+    @Test
+    public void testSave() throws SQLException {
+        insert("a@address", null, "a1");
+        insert("b@address", null, "b1");
+
+        DocumentTable table = new DocumentTable(connector);
+        Assert.assertTrue(table.prepareTable());
+        // the default type replaces the legacy row
+        Assert.assertTrue(table.save("a@address", "visa", "a2", "sig", true));
+        Assert.assertTrue(table.save("a@address", "visa", "a3", "sig", true));
+        // other types won't
+        Assert.assertTrue(table.save("b@address", "profile", "b2", "sig", false));
+        Assert.assertEquals(Arrays.asList("a@address:visa:a3", "b@address::b1", "b@address:profile:b2"), rows());
+    }
+
+    //
+    //  Legacy rows
+    //
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+             Statement stat = conn.createStatement()) {
+            stat.executeUpdate(sql);
+        }
+    }
+
+    private void insert(String did, String type, String data) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+             PreparedStatement stat = conn.prepareStatement("INSERT INTO " + DocumentTable.T_DOCUMENT +
+                     " (did, type, data, signature) VALUES (?, ?, ?, 'sig')")) {
+            stat.setString(1, did);
+            stat.setString(2, type);
+            stat.setString(3, data);
+            stat.executeUpdate();
+        }
+    }
+
+    // "did:type:data", NULL type as "null"
+    private List<String> rows() throws SQLException {
+        List<String> results = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+             Statement stat = conn.createStatement();
+             ResultSet result = stat.executeQuery("SELECT did, type, data FROM " + DocumentTable.T_DOCUMENT +
+                     " ORDER BY did, type")) {
+            while (result.next()) {
+                results.add(result.getString(1) + ":" + result.getString(2) + ":" + result.getString(3));
+            }
+        }
+        return results;
+    }
+}
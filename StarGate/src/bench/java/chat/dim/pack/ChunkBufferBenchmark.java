@@ -0,0 +1,166 @@
+/* license: https://mit-license.org
+ *
+ *  Star Gate: Network Connection Module
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.pack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import chat.dim.mtp.MTPHelper;
+import chat.dim.mtp.Package;
+import chat.dim.type.ByteArray;
+import chat.dim.type.Data;
+
+/**
+ *  Reassembling received chunks: concat path vs ChunkBuffer
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  One MTP package (1 KB, 64 KB or 4 MB body) is split into fragments of
+ *  random sizes, as read from a TCP socket, and fed to:
+ *      1. the old 'StreamPorter.parsePackage()', which joined the cached
+ *         chunks with each read and sliced the remaining back;
+ *      2. the ChunkBuffer used by 'StreamPorter' now.
+ *
+ *  Usage:
+ *      gradle bench
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkBufferBenchmark {
+
+    @Param({"1024", "65536", "4194304"})
+    public int payloadSize;
+
+    /**
+     *  Max size of one read
+     */
+    @Param({"16384"})
+    public int maxFragment;
+
+    private List<byte[]> fragments;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(2026);
+        byte[] payload = new byte[payloadSize];
+        random.nextBytes(payload);
+        byte[] stream = MTPHelper.createMessage(null, new Data(payload)).getBytes();
+        // split into reads of random sizes
+        fragments = new ArrayList<>();
+        int offset = 0, len;
+        while (offset < stream.length) {
+            len = Math.min(1 + random.nextInt(maxFragment), stream.length - offset);
+            fragments.add(Arrays.copyOfRange(stream, offset, offset + len));
+            offset += len;
+        }
+    }
+
+    @Benchmark
+    public int concat() {
+        ByteArray chunks = Data.ZERO;
+        ByteArray buffer;
+        SeekerResult<Package> result;
+        Package pack;
+        int offset;
+        int count = 0;
+        for (byte[] data : fragments) {
+            // same as the old 'StreamPorter.parsePackage()'
+            buffer = chunks.concat(data);
+            chunks = Data.ZERO;
+            result = MTPHelper.seekPackage(buffer);
+            pack = result.value;
+            offset = result.offset;
+            if (offset >= 0) {
+                if (pack != null) {
+                    offset += pack.getSize();
+                    ++count;
+                }
+                if (offset == 0) {
+                    chunks = buffer.concat(chunks);
+                } else if (offset < buffer.getSize()) {
+                    buffer = buffer.slice(offset);
+                    chunks = buffer.concat(chunks);
+                }
+            }
+        }
+        assert count == 1 : "package lost: " + count;
+        return count;
+    }
+
+    @Benchmark
+    public int chunkBuffer() {
+        ChunkBuffer chunks = new ChunkBuffer();
+        SeekerResult<Package> result;
+        Package pack;
+        ChunkBuffer.Block block;
+        int offset;
+        int count = 0;
+        for (byte[] data : fragments) {
+            // same as 'StreamPorter.seekPackage()'
+            chunks.append(data);
+            result = MTPHelper.seekPackage(chunks.view());
+            pack = result.value;
+            offset = result.offset;
+            if (offset < 0) {
+                chunks.clear();
+                continue;
+            }
+            if (pack != null) {
+                block = chunks.share();
+                offset += pack.getSize();
+                ++count;
+                // consumed
+                block.release();
+            }
+            chunks.skip(offset);
+        }
+        assert count == 1 : "package lost: " + count;
+        return count;
+    }
+}
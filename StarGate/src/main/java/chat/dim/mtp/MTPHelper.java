@@ -45,6 +45,15 @@ public final class MTPHelper {
         return seeker.seekPackage(data);
     }
 
+    /**
+     *  Get count of garbage bytes skipped while seeking packages
+     *
+     * @return total rejected bytes
+     */
+    public static long getRejectedBytes() {
+        return seeker.getRejectedBytes();
+    }
+
     public static Package createCommand(ByteArray body) {
         return Package.create(DataType.COMMAND, null, 1, 0, body.getSize(), body);
     }
@@ -53,6 +62,10 @@ public final class MTPHelper {
         return Package.create(DataType.MESSAGE, sn, 1, 0, body.getSize(), body);
     }
 
+    public static Package createFragment(TransactionID sn, int pages, int index, ByteArray body) {
+        return Package.create(DataType.MESSAGE_FRAGMENT, sn, pages, index, body.getSize(), body);
+    }
+
     public static Package respondCommand(TransactionID sn, ByteArray body) {
         return Package.create(DataType.COMMAND_RESPONSE, sn, 1, 0, body.getSize(), body);
     }
@@ -44,9 +44,9 @@ public final class MTPSeeker extends PackageSeeker<Header, Package> {
         try {
             return Header.parse(data);
         } catch (Exception e) {
-            e.printStackTrace();
+            // header error, the seeker will locate next magic code
+            return null;
         }
-        return null;
     }
 
     @Override
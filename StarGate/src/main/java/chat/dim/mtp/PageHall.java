@@ -0,0 +1,212 @@
+/* license: https://mit-license.org
+ *
+ *  MTP: Message Transfer Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mtp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import chat.dim.port.Departure;
+
+/**
+ *  Departure hall for pages
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  The dock gives out a departure with all its fragments in one turn,
+ *  so the pages of a bulk message would still block the ships behind it.
+ *  The porter moves the departures out of the dock into this hall, and
+ *  sends one page for each turn: higher priority (smaller value) first,
+ *  round-robin for the departures with the same priority.
+ *
+ *  The porter takes several pages in one turn (see 'next(int)') to write
+ *  them together, each departure still keeps its own SN and retry state.
+ *
+ *  Responses are still matched by the departure itself (SN + page index),
+ *  a timeout ship given out by the dock again brings the pages not
+ *  responded yet, which replace its pages remaining here.
+ */
+final class PageHall {
+
+    // priority => departures with pages to send
+    private final TreeMap<Integer, Deque<Task>> fleets = new TreeMap<>();
+    // departure => task
+    private final Map<Departure, Task> tasks = new IdentityHashMap<>();
+
+    private long bytes = 0;  // total length of the pages waiting
+    private long since = 0;  // when the first page came into the empty hall
+
+    synchronized boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized long getSince() {
+        return since;
+    }
+
+    /**
+     *  Add a departure ship from the dock
+     *
+     * @param ship - outgo ship (new or timeout)
+     */
+    synchronized void add(Departure ship) {
+        List<byte[]> fragments = ship.getFragments();
+        if (fragments == null || fragments.isEmpty()) {
+            // all pages responded
+            return;
+        }
+        // the ship removes the pages responded from its own list
+        fragments = new ArrayList<>(fragments);
+        if (tasks.isEmpty()) {
+            since = System.currentTimeMillis();
+        }
+        Task task = tasks.get(ship);
+        if (task != null) {
+            // resend the pages not responded yet
+            bytes -= task.remaining();
+            task.reset(fragments);
+            bytes += task.remaining();
+            return;
+        }
+        task = new Task(ship, fragments);
+        bytes += task.remaining();
+        tasks.put(ship, task);
+        Deque<Task> queue = fleets.computeIfAbsent(ship.getPriority(), k -> new ArrayDeque<>());
+        queue.addLast(task);
+    }
+
+    /**
+     *  Get next page to send
+     *
+     * @return null on empty
+     */
+    synchronized Page next() {
+        Iterator<Map.Entry<Integer, Deque<Task>>> iterator = fleets.entrySet().iterator();
+        Deque<Task> queue;
+        Task task;
+        byte[] data;
+        boolean last;
+        while (iterator.hasNext()) {
+            queue = iterator.next().getValue();
+            task = queue.pollFirst();
+            if (task == null) {
+                iterator.remove();
+                continue;
+            }
+            data = task.pages.get(task.cursor++);
+            bytes -= data.length;
+            last = task.cursor >= task.pages.size();
+            if (last) {
+                tasks.remove(task.ship);
+                if (queue.isEmpty()) {
+                    iterator.remove();
+                }
+            } else {
+                // round-robin
+                queue.addLast(task);
+            }
+            return new Page(task.ship, data, last);
+        }
+        return null;
+    }
+
+    /**
+     *  Get next pages to write together
+     *
+     * @param limit - stop after the total size reached it
+     * @param max   - count limit
+     * @return pages, empty if no more page
+     */
+    synchronized List<Page> next(long limit, int max) {
+        List<Page> pages = new ArrayList<>();
+        long total = 0;
+        Page item;
+        while (pages.size() < max) {
+            item = next();
+            if (item == null) {
+                break;
+            }
+            pages.add(item);
+            total += item.data.length;
+            if (total >= limit) {
+                break;
+            }
+        }
+        return pages;
+    }
+
+    private static final class Task {
+
+        final Departure ship;
+        List<byte[]> pages;
+        int cursor;
+
+        Task(Departure departure, List<byte[]> fragments) {
+            ship = departure;
+            pages = fragments;
+            cursor = 0;
+        }
+
+        void reset(List<byte[]> fragments) {
+            pages = fragments;
+            cursor = 0;
+        }
+
+        long remaining() {
+            long size = 0;
+            for (int i = cursor; i < pages.size(); ++i) {
+                size += pages.get(i).length;
+            }
+            return size;
+        }
+    }
+
+    static final class Page {
+
+        final Departure ship;
+        final byte[] data;
+        final boolean last;  // last page of this turn
+
+        Page(Departure departure, byte[] payload, boolean isLast) {
+            ship = departure;
+            data = payload;
+            last = isLast;
+        }
+    }
+}
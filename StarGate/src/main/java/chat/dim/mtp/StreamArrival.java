@@ -31,9 +31,17 @@
 package chat.dim.mtp;
 
 import java.util.Date;
+import java.util.List;
+
+import chat.dim.pack.ChunkBuffer;
+import chat.dim.type.ByteArray;
+import chat.dim.type.Data;
 
 public final class StreamArrival extends PackageArrival {
 
+    // receive buffer of the package
+    private ChunkBuffer.Block block = null;
+
     public StreamArrival(Package pack, Date now) {
         super(pack, now);
     }
@@ -42,6 +50,25 @@ public final class StreamArrival extends PackageArrival {
         super(pack);
     }
 
+    void setBlock(ChunkBuffer.Block chunk) {
+        block = chunk;
+    }
+
+    /**
+     *  Release the receive buffer after the payload consumed,
+     *  the package must not be touched anymore after that.
+     *
+     *  The porter calls it after the delegate callback returned,
+     *  a delegate may call it earlier once the payload copied.
+     */
+    public synchronized void release() {
+        ChunkBuffer.Block chunk = block;
+        if (chunk != null) {
+            block = null;
+            chunk.release();
+        }
+    }
+
     public byte[] getPayload() {
         Package pack = getPackage();
         if (pack == null || pack.body == null) {
@@ -50,4 +77,58 @@ public final class StreamArrival extends PackageArrival {
         return pack.body.getBytes();
     }
 
+    /**
+     *  Join the pages of a fragmented message
+     *
+     *  A page received twice (resent before its response arrived) is ignored,
+     *  and it fails when any page is missing, out of range,
+     *  or belongs to another message.
+     *
+     * @param fragments - pages received, in any order
+     * @return message package; null on pages missing or mismatched
+     */
+    public static Package joinPages(List<Package> fragments) {
+        if (fragments == null || fragments.isEmpty()) {
+            return null;
+        }
+        Header first = fragments.get(0).head;
+        TransactionID sn = first.sn;
+        int count = first.pages;
+        if (count <= 0) {
+            return null;
+        }
+        Package[] array = new Package[count];
+        Header head;
+        int length = 0;
+        for (Package item : fragments) {
+            head = item.head;
+            if (head.pages != count || !sn.equals(head.sn)) {
+                // not the same message
+                return null;
+            } else if (head.index < 0 || head.index >= count) {
+                // index error
+                return null;
+            } else if (array[head.index] != null) {
+                // duplicated
+                continue;
+            }
+            array[head.index] = item;
+            length += item.body.getSize();
+        }
+        // join the bodies in index order
+        byte[] payload = new byte[length];
+        int offset = 0;
+        ByteArray body;
+        for (Package item : array) {
+            if (item == null) {
+                // page missing
+                return null;
+            }
+            body = item.body;
+            System.arraycopy(body.getBuffer(), body.getOffset(), payload, offset, body.getSize());
+            offset += body.getSize();
+        }
+        return MTPHelper.createMessage(sn, new Data(payload));
+    }
+
 }
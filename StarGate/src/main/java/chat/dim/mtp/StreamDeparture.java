@@ -33,8 +33,18 @@ package chat.dim.mtp;
 import java.util.ArrayList;
 import java.util.List;
 
+import chat.dim.type.ByteArray;
+
 public final class StreamDeparture extends PackageDeparture {
 
+    /**
+     *  Message body longer than this will be split into fragments (pages),
+     *  the porter sends them interleaved with the pages of other departures,
+     *  so small messages behind a bulk one won't wait for the whole body;
+     *  0 means never split (the remote must be able to join pages).
+     */
+    public static int PAGE_SIZE = 0;
+
     public StreamDeparture(Package pack, int prior, int maxTries) {
         super(pack, prior, maxTries);
     }
@@ -45,9 +55,25 @@ public final class StreamDeparture extends PackageDeparture {
 
     @Override
     protected List<Package> split(Package pack) {
-        // stream docker will not separate packages
         List<Package> packages = new ArrayList<>();
-        packages.add(pack);
+        int pageSize = PAGE_SIZE;
+        ByteArray body = pack.body;
+        int bodyLen = body.getSize();
+        if (pageSize <= 0 || bodyLen <= pageSize || !pack.isMessage()) {
+            // stream docker will not separate small packages
+            packages.add(pack);
+            return packages;
+        }
+        // split message body into fragments with the same SN,
+        // each page will be responded with its index
+        TransactionID sn = pack.head.sn;
+        int pages = (bodyLen + pageSize - 1) / pageSize;
+        int start = 0, end;
+        for (int index = 0; index < pages; ++index) {
+            end = Math.min(start + pageSize, bodyLen);
+            packages.add(MTPHelper.createFragment(sn, pages, index, body.slice(start, end)));
+            start = end;
+        }
         return packages;
     }
 }
@@ -30,16 +30,33 @@
  */
 package chat.dim.mtp;
 
+import java.io.IOError;
+import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import chat.dim.pack.BufferPool;
+import chat.dim.pack.ChunkBuffer;
 import chat.dim.pack.DeparturePacker;
 import chat.dim.pack.SeekerResult;
 import chat.dim.port.Arrival;
 import chat.dim.port.Departure;
+import chat.dim.port.Porter;
 import chat.dim.type.ByteArray;
 import chat.dim.type.Data;
 
@@ -48,9 +65,26 @@ import chat.dim.type.Data;
  */
 public class StreamPorter extends PackagePorter implements DeparturePacker {
 
-    private ByteArray chunks = Data.ZERO;
+    /**
+     *  Pool for receive buffers, null means no recycling;
+     *  buffers come back to the pool only after the arrivals released.
+     */
+    public static BufferPool bufferPool = null;
+
+    /**
+     *  Pages of an uncompleted message will be dropped after expired,
+     *  and the SN of a joined message is kept as long to ignore pages resent
+     */
+    public static long PAGES_EXPIRES = 300 * 1000;  // milliseconds
+
+    private final ChunkBuffer chunks = new ChunkBuffer(bufferPool);
     private final ReadWriteLock chunksLock = new ReentrantReadWriteLock();
-    private boolean packageReceived = false;
+
+    // outgo pages, interleaved by priority
+    private final PageHall hall = new PageHall();
+
+    // SN => income pages
+    private final Map<TransactionID, Pages> pagesMap = new HashMap<>();
 
     public StreamPorter(SocketAddress remote, SocketAddress local) {
         super(remote, local);
@@ -59,45 +93,396 @@ public class StreamPorter extends PackagePorter implements DeparturePacker {
     @Override
     protected Package parsePackage(byte[] data) {
         Package pack;
+        List<ChunkBuffer.Block> blocks = new ArrayList<>(1);
         Lock writeLock = chunksLock.writeLock();
         writeLock.lock();
         try {
             // join the data to the memory cache
-            ByteArray buffer = chunks.concat(data);
-            chunks = Data.ZERO;
+            chunks.append(data);
             // try to fetch a package
-            SeekerResult<Package> result = MTPHelper.seekPackage(buffer);
-            pack = result.value;
-            int offset = result.offset;
-            packageReceived = pack != null;
-            if (offset >= 0) {
-                // 'error part' + 'MTP package' + 'remaining data'
-                if (pack != null) {
-                    offset += pack.getSize();
-                }
-                if (offset == 0) {
-                    chunks = buffer.concat(chunks);
-                } else if (offset < buffer.getSize()) {
-                    buffer = buffer.slice(offset);
-                    chunks = buffer.concat(chunks);
+            pack = seekPackage(blocks);
+        } finally {
+            writeLock.unlock();
+        }
+        for (ChunkBuffer.Block item : blocks) {
+            // the package maybe kept by anyone
+            item.discard();
+        }
+        return pack;
+    }
+
+    /**
+     *  Parse all completed packages from the cached data in one pass
+     *
+     * @param data   - received data
+     * @param blocks - buffer blocks of the packages
+     * @return packages
+     */
+    private List<Package> parsePackages(byte[] data, List<ChunkBuffer.Block> blocks) {
+        List<Package> packages = new ArrayList<>();
+        Package pack;
+        Lock writeLock = chunksLock.writeLock();
+        writeLock.lock();
+        try {
+            // join the data to the memory cache
+            chunks.append(data);
+            // the cached data maybe contain sticky packages,
+            // so we need to fetch them circularly here
+            while (!chunks.isEmpty()) {
+                pack = seekPackage(blocks);
+                if (pack == null) {
+                    // waiting for more data
+                    break;
                 }
+                packages.add(pack);
             }
         } finally {
             writeLock.unlock();
         }
+        return packages;
+    }
+
+    // seek next package from the unread data in place
+    private Package seekPackage(List<ChunkBuffer.Block> blocks) {
+        SeekerResult<Package> result = MTPHelper.seekPackage(chunks.view());
+        Package pack = result.value;
+        int offset = result.offset;
+        if (offset < 0) {
+            // data error, drop the whole buffer
+            chunks.clear();
+        } else {
+            // 'error part' + 'MTP package' + 'remaining data'
+            if (pack != null) {
+                // the package is a slice of the buffer
+                blocks.add(chunks.share());
+                offset += pack.getSize();
+            }
+            chunks.skip(offset);
+        }
         return pack;
     }
 
     @Override
     public void processReceived(byte[] data) {
-        // the cached data maybe contain sticky packages,
-        // so we need to process them circularly here
-        packageReceived = true;
-        while (packageReceived) {
-            packageReceived = false;
-            super.processReceived(data);
-            data = new byte[0];
+        // 1. get all completed packages from received data
+        List<ChunkBuffer.Block> blocks = new ArrayList<>();
+        List<Package> packages = parsePackages(data, blocks);
+        int count = packages.size();
+        if (count == 0) {
+            // waiting for more data
+            return;
+        }
+        // 2. check income ships for response
+        List<Arrival> ships = new ArrayList<>(count);
+        Arrival ship;
+        Arrival income;
+        ChunkBuffer.Block block;
+        Package pack;
+        for (int index = 0; index < count; ++index) {
+            pack = packages.get(index);
+            block = blocks.get(index);
+            if (pack.isFragment()) {
+                // respond this page, and join it when all pages received
+                pack = receivePage(pack, block);
+                if (pack == null) {
+                    // waiting for more pages
+                    continue;
+                }
+                ships.add(createArrival(pack));
+                continue;
+            }
+            ship = createArrival(pack);
+            income = checkArrival(ship);
+            if (income == ship && ship instanceof StreamArrival) {
+                // the receiver should release it after consumed
+                ((StreamArrival) ship).setBlock(block);
+            } else {
+                // the package maybe kept as a fragment
+                block.discard();
+            }
+            if (income == null) {
+                // waiting for more fragment
+                continue;
+            }
+            ships.add(income);
+        }
+        if (ships.isEmpty()) {
+            return;
+        }
+        // 3. process income ships with completed data packages
+        Porter.Delegate keeper = getDelegate();
+        try {
+            if (keeper instanceof BatchDelegate) {
+                ((BatchDelegate) keeper).onPorterReceived(ships, this);
+            } else if (keeper != null) {
+                for (Arrival item : ships) {
+                    keeper.onPorterReceived(item, this);
+                }
+            }
+        } finally {
+            // 4. the packages are only valid within the callback,
+            //    so the receive buffers can be reused now
+            for (Arrival item : ships) {
+                if (item instanceof StreamArrival) {
+                    ((StreamArrival) item).release();
+                }
+            }
+        }
+    }
+
+    /**
+     *  Keep the page until all pages of the message received
+     *
+     * @param page  - message fragment
+     * @param block - buffer block of the page
+     * @return joined message; null on waiting for more pages
+     */
+    private Package receivePage(Package page, ChunkBuffer.Block block) {
+        Header head = page.head;
+        // 1. respond this page
+        Package res = createMessageResponse(head.sn, head.pages, head.index);
+        sendData(res.getBytes());
+        // 2. join the pages
+        long now = System.currentTimeMillis();
+        Package joined;
+        synchronized (pagesMap) {
+            purgePages(now);
+            Pages received = pagesMap.get(head.sn);
+            if (received == null) {
+                received = new Pages(now);
+                pagesMap.put(head.sn, received);
+            }
+            if (!received.add(page, block)) {
+                // duplicated, or the message was already joined
+                block.discard();
+                return null;
+            } else if (received.size() < head.pages) {
+                // waiting for more pages
+                return null;
+            }
+            joined = StreamArrival.joinPages(received.pages);
+            // the message was copied out, or the pages are broken,
+            // keep the SN only for ignoring the pages resent
+            received.finish();
+        }
+        assert joined != null : "failed to join pages: " + head.sn;
+        return joined;
+    }
+
+    // drop uncompleted messages expired
+    private void purgePages(long now) {
+        Iterator<Map.Entry<TransactionID, Pages>> iterator = pagesMap.entrySet().iterator();
+        Pages item;
+        while (iterator.hasNext()) {
+            item = iterator.next().getValue();
+            if (now > item.time + PAGES_EXPIRES) {
+                item.finish();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Pages {
+
+        final long time;
+        final List<Package> pages = new ArrayList<>();
+        final List<ChunkBuffer.Block> blocks = new ArrayList<>();
+        final Set<Integer> indexes = new HashSet<>();
+        boolean finished = false;
+
+        Pages(long now) {
+            time = now;
+        }
+
+        int size() {
+            return indexes.size();
+        }
+
+        boolean add(Package page, ChunkBuffer.Block block) {
+            if (finished || !indexes.add(page.head.index)) {
+                return false;
+            }
+            pages.add(page);
+            blocks.add(block);
+            return true;
         }
+
+        void finish() {
+            finished = true;
+            // the page bodies are slices of the receive buffers
+            for (ChunkBuffer.Block item : blocks) {
+                item.release();
+            }
+            blocks.clear();
+            pages.clear();
+        }
+    }
+
+    /**
+     *  Pages ready in one turn are written with one call (gathering write)
+     *  while the total size not exceeds this limit, 0 means one by one;
+     *  if the waiting pages are less than it, the porter holds them for
+     *  a short window to collect more.
+     */
+    public static int COALESCE_BYTES = 16 * 1024;  // 16 KB
+    public static int COALESCE_PAGES = 64;
+    public static long FLUSH_WINDOW = 2;  // milliseconds, 0 means no waiting
+
+    private SocketProvider socketProvider = null;
+    private final Lock sendLock = new ReentrantLock();
+
+    // counters for outgoing writes
+    private final AtomicLong flushCount = new AtomicLong(0);      // writes
+    private final AtomicLong coalescedCount = new AtomicLong(0);  // pages written together with others
+
+    public void setSocketProvider(SocketProvider provider) {
+        socketProvider = provider;
+    }
+
+    /**
+     *  Get count of writes, a gathering write counts once
+     *
+     * @return count of writes
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     *  Get count of pages written together with other pages
+     *
+     * @return count of coalesced pages
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     *  Check whether pages are held in the flush window
+     *
+     * @return true on pages waiting
+     */
+    public boolean hasPendingPages() {
+        return !hall.isEmpty();
+    }
+
+    @Override
+    public boolean sendData(byte[] payload) {
+        sendLock.lock();
+        try {
+            return super.sendData(payload);
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean process() {
+        if (!isAlive()) {
+            // waiting for connection
+            return false;
+        }
+        Porter.Delegate keeper = getDelegate();
+        // 1. move the departures ready from the dock into the hall
+        Date now = new Date();
+        Departure outgo;
+        Set<Departure> moved = new HashSet<>();
+        while ((outgo = getNextDeparture(now)) != null) {
+            if (!moved.add(outgo)) {
+                // given out again in the same turn
+                break;
+            } else if (outgo.getStatus(now) == Departure.Status.FAILED) {
+                if (keeper != null) {
+                    IOError error = new IOError(new Exception("Request timeout"));
+                    keeper.onPorterFailed(error, outgo, this);
+                }
+                continue;
+            }
+            hall.add(outgo);
+        }
+        if (hall.isEmpty()) {
+            // nothing to do now
+            return false;
+        }
+        // 2. hold the small pages for a moment to write them together
+        int limit = COALESCE_BYTES;
+        long window = FLUSH_WINDOW;
+        if (window > 0 && hall.getBytes() < limit && now.getTime() - hall.getSince() < window) {
+            return false;
+        }
+        // 3. send pages from the hall
+        List<PageHall.Page> pages = hall.next(limit, limit > 0 ? COALESCE_PAGES : 1);
+        boolean[] results = writePages(pages);
+        // 4. callback
+        if (keeper == null) {
+            return true;
+        }
+        PageHall.Page page;
+        for (int index = 0; index < results.length; ++index) {
+            page = pages.get(index);
+            if (!results[index]) {
+                IOError error = new IOError(new Exception("Failed to send page"));
+                keeper.onPorterError(error, page.ship, this);
+            } else if (page.last && !page.ship.isImportant()) {
+                // no response needed
+                keeper.onPorterSent(page.ship, this);
+            }
+        }
+        return true;
+    }
+
+    // write pages with one call if possible, return result for each page
+    private boolean[] writePages(List<PageHall.Page> pages) {
+        int count = pages.size();
+        boolean[] results = new boolean[count];
+        SocketProvider provider = socketProvider;
+        GatheringByteChannel sock = null;
+        if (count > 1 && provider != null) {
+            sock = provider.getSocket(getRemoteAddress(), getLocalAddress());
+        }
+        if (sock == null) {
+            // write one by one
+            for (int index = 0; index < count; ++index) {
+                results[index] = sendData(pages.get(index).data);
+                flushCount.incrementAndGet();
+            }
+            return results;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        long remaining = 0;
+        for (int index = 0; index < count; ++index) {
+            buffers[index] = ByteBuffer.wrap(pages.get(index).data);
+            remaining += buffers[index].remaining();
+        }
+        sendLock.lock();
+        try {
+            int offset = 0;
+            long sent;
+            while (remaining > 0) {
+                sent = sock.write(buffers, offset, count - offset);
+                remaining -= sent;
+                while (offset < count && !buffers[offset].hasRemaining()) {
+                    ++offset;
+                }
+                if (sent == 0) {
+                    if (!isAlive()) {
+                        break;
+                    }
+                    // socket buffer full, wait a moment
+                    LockSupport.parkNanos(1000000L);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            sendLock.unlock();
+        }
+        flushCount.incrementAndGet();
+        coalescedCount.addAndGet(count);
+        for (int index = 0; index < count; ++index) {
+            results[index] = !buffers[index].hasRemaining();
+        }
+        return results;
     }
 
     @Override
@@ -174,4 +559,36 @@ public class StreamPorter extends PackagePorter implements DeparturePacker {
         return result.value != null;
     }
 
+    /**
+     *  Provider of the socket for gathering writes
+     */
+    public interface SocketProvider {
+
+        /**
+         *  Get the socket connected to the remote
+         *
+         * @param remote - remote address
+         * @param local  - local address
+         * @return null to write the pages one by one
+         */
+        GatheringByteChannel getSocket(SocketAddress remote, SocketAddress local);
+    }
+
+    /**
+     *  Porter delegate which receives all packages parsed from one read at once
+     *
+     *  NOTICE: the stream arrivals are released after the callback returned,
+     *          copy the payload (e.g. 'getPayload()') before keeping it.
+     */
+    public interface BatchDelegate extends Porter.Delegate {
+
+        /**
+         *  Callback when new packages received
+         *
+         * @param ships  - income data packages
+         * @param porter - connection porter
+         */
+        void onPorterReceived(List<Arrival> ships, Porter porter);
+    }
+
 }
@@ -31,19 +31,23 @@
 package chat.dim.network;
 
 import java.net.SocketAddress;
+import java.nio.channels.GatheringByteChannel;
 
+import chat.dim.mtp.StreamPorter;
+import chat.dim.net.Channel;
 import chat.dim.net.Connection;
 import chat.dim.net.Hub;
 import chat.dim.port.Arrival;
 import chat.dim.port.Porter;
 import chat.dim.socket.ActiveConnection;
+import chat.dim.socket.BaseChannel;
 import chat.dim.startrek.StarGate;
 
 /**
  *  Gate with hub for connection
  */
 public abstract class CommonGate<H extends Hub>
-        extends StarGate {
+        extends StarGate implements StreamPorter.SocketProvider {
 
     private H hub;
 
@@ -98,6 +102,19 @@ public abstract class CommonGate<H extends Hub>
         return docker.sendData(payload);
     }
 
+    // the socket maybe replaced after reconnected, so get it from the hub every time
+    @Override
+    public GatheringByteChannel getSocket(SocketAddress remote, SocketAddress local) {
+        Channel channel = getHub().open(remote, local);
+        if (channel instanceof BaseChannel) {
+            Object sock = ((BaseChannel<?>) channel).getSocket();
+            if (sock instanceof GatheringByteChannel) {
+                return (GatheringByteChannel) sock;
+            }
+        }
+        return null;
+    }
+
     //
     //  Keep Active
     //
@@ -45,6 +45,7 @@ public final class TCPClientGate extends CommonGate<StreamClientHub> {
     protected Porter createPorter(SocketAddress remote, SocketAddress local) {
         StreamPorter docker = new StreamPorter(remote, local);
         docker.setDelegate(getDelegate());
+        docker.setSocketProvider(this);
         return docker;
     }
 
@@ -46,6 +46,7 @@ public final class TCPServerGate extends CommonGate<StreamServerHub> {
         // TODO: check data format before creating docker
         StreamPorter docker = new StreamPorter(remote, local);
         docker.setDelegate(getDelegate());
+        docker.setSocketProvider(this);
         return docker;
     }
 
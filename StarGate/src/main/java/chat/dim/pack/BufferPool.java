@@ -0,0 +1,61 @@
+/* license: https://mit-license.org
+ *
+ *  Star Gate: Network Connection Module
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.pack;
+
+/**
+ *  Pool for reusing byte buffers
+ */
+public interface BufferPool {
+
+    /**
+     *  Get a buffer with enough capacity
+     *
+     * @param capacity - min length
+     * @return byte array, maybe longer than the capacity
+     */
+    byte[] allocate(int capacity);
+
+    /**
+     *  Return a buffer to the pool for reusing,
+     *  the caller must not touch it anymore
+     *
+     * @param buffer - byte array allocated from this pool
+     */
+    void recycle(byte[] buffer);
+
+    /**
+     *  Give up a buffer which is still referenced by someone else,
+     *  so it will never come back to the pool
+     *
+     * @param buffer - byte array allocated from this pool
+     */
+    void discard(byte[] buffer);
+}
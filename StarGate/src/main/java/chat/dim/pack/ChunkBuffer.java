@@ -0,0 +1,272 @@
+/* license: https://mit-license.org
+ *
+ *  Star Gate: Network Connection Module
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.pack;
+
+import chat.dim.type.ByteArray;
+import chat.dim.type.Data;
+
+/**
+ *  Growable buffer for received chunks
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Received data is appended after the write cursor, and the unread part
+ *  can be viewed as a ByteArray without copying, so the package seeker
+ *  can scan it in place and the packages found are just slices of it.
+ *
+ *  Once a package was sliced out, the bytes before the read cursor must
+ *  not be overwritten until the package is released, so the unread part
+ *  will be moved into a new array when compacting (only after the read
+ *  cursor passed the threshold) or growing.
+ */
+public class ChunkBuffer {
+
+    public static int INITIAL_CAPACITY = 4 * 1024;    // 4 KB
+    public static int COMPACT_THRESHOLD = 64 * 1024;  // 64 KB
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final BufferPool pool;  // null means no recycling
+
+    private Block block;
+    private int readPos;
+    private int writePos;
+
+    public ChunkBuffer(BufferPool bufferPool) {
+        super();
+        pool = bufferPool;
+        block = null;
+        readPos = 0;
+        writePos = 0;
+    }
+
+    public ChunkBuffer() {
+        this(null);
+    }
+
+    private byte[] getBuffer() {
+        Block current = block;
+        return current == null ? EMPTY : current.data;
+    }
+
+    /**
+     *  Get length of unread data
+     *
+     * @return size
+     */
+    public int getSize() {
+        return writePos - readPos;
+    }
+
+    public boolean isEmpty() {
+        return writePos == readPos;
+    }
+
+    /**
+     *  Get unread data without copying
+     *
+     * @return data view
+     */
+    public ByteArray view() {
+        int size = writePos - readPos;
+        if (size == 0) {
+            return Data.ZERO;
+        }
+        return new Data(getBuffer(), readPos, size);
+    }
+
+    /**
+     *  Mark current buffer as shared,
+     *  call it after a slice of the view was handed out
+     *
+     * @return block to be released after the slice consumed
+     */
+    public Block share() {
+        Block current = block;
+        assert current != null : "chunk buffer empty";
+        current.retain();
+        return current;
+    }
+
+    /**
+     *  Append received data after the write cursor
+     *
+     * @param data - received data
+     */
+    public void append(byte[] data) {
+        int len = data == null ? 0 : data.length;
+        if (len == 0) {
+            return;
+        }
+        ensureCapacity(len);
+        System.arraycopy(data, 0, getBuffer(), writePos, len);
+        writePos += len;
+    }
+
+    /**
+     *  Move the read cursor forward
+     *
+     * @param length - count of bytes consumed
+     */
+    public void skip(int length) {
+        int size = writePos - readPos;
+        if (length <= 0) {
+            return;
+        } else if (length >= size) {
+            // all data consumed
+            clear();
+            return;
+        }
+        readPos += length;
+        if (readPos >= COMPACT_THRESHOLD) {
+            // too much garbage in the front
+            reallocate(getBuffer().length, size - length);
+        }
+    }
+
+    /**
+     *  Drop all unread data
+     */
+    public void clear() {
+        Block current = block;
+        if (current != null && current.isShared()) {
+            // the old buffer is still in use, let it go
+            current.retire();
+            block = null;
+        }
+        readPos = 0;
+        writePos = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        int capacity = getBuffer().length;
+        if (writePos + extra <= capacity) {
+            // enough space in the tail
+            return;
+        }
+        int size = writePos - readPos;
+        int needed = size + extra;
+        if (needed > capacity) {
+            capacity = Math.max(capacity, INITIAL_CAPACITY);
+            while (capacity < needed) {
+                capacity <<= 1;
+            }
+        }
+        reallocate(capacity, size);
+    }
+
+    private void reallocate(int capacity, int size) {
+        Block current = block;
+        byte[] src = getBuffer();
+        if (current == null || current.isShared() || src.length < capacity) {
+            // slices of the old buffer may still be in use,
+            // so copy the unread part into a new buffer
+            byte[] buffer = pool == null ? new byte[capacity] : pool.allocate(capacity);
+            if (size > 0) {
+                System.arraycopy(src, readPos, buffer, 0, size);
+            }
+            if (current != null) {
+                current.retire();
+            }
+            block = new Block(buffer, pool);
+        } else if (size > 0) {
+            // move the unread part to the front
+            System.arraycopy(src, readPos, src, 0, size);
+        }
+        readPos = 0;
+        writePos = size;
+    }
+
+    /**
+     *  Backing array shared by the packages sliced from it
+     */
+    public static final class Block {
+
+        private final byte[] data;
+        private final BufferPool pool;
+
+        private int refs = 0;           // count of slices in use
+        private boolean retired = false;  // chunk buffer moved to another block
+        private boolean pinned = false;   // slices may be held forever
+        private boolean recycled = false;
+
+        Block(byte[] buffer, BufferPool bufferPool) {
+            super();
+            data = buffer;
+            pool = bufferPool;
+        }
+
+        synchronized void retain() {
+            ++refs;
+        }
+
+        synchronized boolean isShared() {
+            return refs > 0 || pinned;
+        }
+
+        synchronized void retire() {
+            retired = true;
+            recycleIfUnused();
+        }
+
+        /**
+         *  Release a slice after it's consumed
+         */
+        public synchronized void release() {
+            assert refs > 0 : "block released too many times";
+            --refs;
+            recycleIfUnused();
+        }
+
+        /**
+         *  Give up a slice which maybe still in use by someone else,
+         *  the block will never be reused after that
+         */
+        public synchronized void discard() {
+            assert refs > 0 : "block released too many times";
+            --refs;
+            if (!pinned) {
+                pinned = true;
+                if (pool != null) {
+                    pool.discard(data);
+                }
+            }
+        }
+
+        private void recycleIfUnused() {
+            if (retired && refs == 0 && !pinned && !recycled) {
+                recycled = true;
+                if (pool != null) {
+                    pool.recycle(data);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/* license: https://mit-license.org
+ *
+ *  Star Gate: Network Connection Module
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.pack;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Size-classed Buffer Pool
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Buffer sizes are powers of 2, from 4 KB to 4 MB; larger buffers are not pooled.
+ *  Recycled buffers go to a small cache of the current thread first,
+ *  and then to the shared cache of its size class.
+ *
+ *  In debug mode, buffers collected by GC without being recycled or discarded
+ *  will be reported with the stack trace where they were allocated.
+ */
+public class DefaultBufferPool implements BufferPool {
+
+    public static boolean debug = false;
+
+    private static final int MIN_SHIFT = 12;  // 4 KB
+    private static final int MAX_SHIFT = 22;  // 4 MB
+    private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    private final int maxCached;       // max buffers in each shared cache
+    private final int maxLocalCached;  // max buffers in each thread cache
+
+    private final Queue<byte[]>[] caches;
+    private final AtomicInteger[] counts;
+    private final ThreadLocal<ArrayDeque<byte[]>[]> localCaches;
+
+    // leak detection
+    private final Map<byte[], Tracker> trackers = new WeakHashMap<>();
+    private final Set<Tracker> tracking = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<byte[]> collected = new ReferenceQueue<>();
+    private final AtomicLong leaks = new AtomicLong(0);
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public DefaultBufferPool(int maxCached, int maxLocalCached) {
+        super();
+        this.maxCached = maxCached;
+        this.maxLocalCached = maxLocalCached;
+        caches = new Queue[CLASSES];
+        counts = new AtomicInteger[CLASSES];
+        for (int i = 0; i < CLASSES; ++i) {
+            caches[i] = new ConcurrentLinkedQueue<>();
+            counts[i] = new AtomicInteger(0);
+        }
+        localCaches = ThreadLocal.withInitial(DefaultBufferPool::newLocalCaches);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayDeque<byte[]>[] newLocalCaches() {
+        return new ArrayDeque[CLASSES];
+    }
+
+    public DefaultBufferPool() {
+        this(64, 4);
+    }
+
+    /**
+     *  Get count of buffers leaked (only in debug mode)
+     *
+     * @return leaked buffers
+     */
+    public long getLeakCount() {
+        checkLeaks();
+        return leaks.get();
+    }
+
+    // get size class for the capacity, -1 for too big
+    private static int sizeClass(int capacity) {
+        if (capacity <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    // get size class of the buffer, -1 if it's not from this pool
+    private static int sizeClassOf(byte[] buffer) {
+        int len = buffer.length;
+        if (len < (1 << MIN_SHIFT) || (len & (len - 1)) != 0) {
+            return -1;
+        }
+        int shift = 31 - Integer.numberOfLeadingZeros(len);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    @Override
+    public byte[] allocate(int capacity) {
+        int index = sizeClass(capacity);
+        if (index < 0) {
+            // too big, don't pool it
+            return new byte[capacity];
+        }
+        // 1. check cache of current thread
+        byte[] buffer = null;
+        ArrayDeque<byte[]> local = localCaches.get()[index];
+        if (local != null) {
+            buffer = local.pollLast();
+        }
+        // 2. check shared cache
+        if (buffer == null) {
+            buffer = caches[index].poll();
+            if (buffer != null) {
+                counts[index].decrementAndGet();
+            }
+        }
+        // 3. create new buffer
+        if (buffer == null) {
+            buffer = new byte[1 << (index + MIN_SHIFT)];
+        }
+        if (debug) {
+            track(buffer);
+        }
+        return buffer;
+    }
+
+    @Override
+    public void recycle(byte[] buffer) {
+        int index = sizeClassOf(buffer);
+        if (index < 0) {
+            // not pooled
+            return;
+        }
+        if (debug) {
+            untrack(buffer);
+        }
+        // 1. put back to cache of current thread
+        ArrayDeque<byte[]>[] locals = localCaches.get();
+        ArrayDeque<byte[]> local = locals[index];
+        if (local == null) {
+            local = new ArrayDeque<>();
+            locals[index] = local;
+        }
+        if (local.size() < maxLocalCached) {
+            local.addLast(buffer);
+            return;
+        }
+        // 2. put back to shared cache
+        if (counts[index].incrementAndGet() <= maxCached) {
+            caches[index].offer(buffer);
+        } else {
+            // too many buffers cached, let it go
+            counts[index].decrementAndGet();
+        }
+    }
+
+    @Override
+    public void discard(byte[] buffer) {
+        if (debug) {
+            untrack(buffer);
+        }
+    }
+
+    //
+    //  Leak Detection
+    //
+
+    private void track(byte[] buffer) {
+        checkLeaks();
+        Tracker tracker = new Tracker(buffer, collected);
+        tracking.add(tracker);
+        synchronized (trackers) {
+            trackers.put(buffer, tracker);
+        }
+    }
+
+    private void untrack(byte[] buffer) {
+        Tracker tracker;
+        synchronized (trackers) {
+            tracker = trackers.remove(buffer);
+        }
+        if (tracker != null) {
+            tracking.remove(tracker);
+            tracker.clear();
+        }
+    }
+
+    private void checkLeaks() {
+        Object ref;
+        while ((ref = collected.poll()) != null) {
+            if (tracking.remove(ref)) {
+                // collected without recycling
+                leaks.incrementAndGet();
+                ((Tracker) ref).trace.printStackTrace();
+            }
+        }
+    }
+
+    private static final class Tracker extends WeakReference<byte[]> {
+
+        final Throwable trace;
+
+        Tracker(byte[] buffer, ReferenceQueue<byte[]> queue) {
+            super(buffer, queue);
+            trace = new Throwable("buffer leaked (" + buffer.length + " bytes), allocated at:");
+        }
+    }
+}
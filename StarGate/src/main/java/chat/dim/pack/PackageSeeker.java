@@ -30,6 +30,8 @@
  */
 package chat.dim.pack;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import chat.dim.type.ByteArray;
 
 public abstract class PackageSeeker<H, P> {
@@ -38,11 +40,39 @@ public abstract class PackageSeeker<H, P> {
     private final int MAGIC_OFFSET;
     private final int MAX_HEAD_LENGTH;
 
+    // bad character table for locating magic code
+    private final int[] skipTable;
+
+    // count of bytes skipped while resyncing
+    private final AtomicLong rejected = new AtomicLong(0);
+
     public PackageSeeker(byte[] magicCode, int magicOffset, int maxHeadLen) {
         super();
         MAGIC_CODE = magicCode;
         MAGIC_OFFSET = magicOffset;
         MAX_HEAD_LENGTH = maxHeadLen;
+        skipTable = buildSkipTable(magicCode);
+    }
+
+    private static int[] buildSkipTable(byte[] pattern) {
+        int len = pattern.length;
+        int[] table = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            table[i] = len;
+        }
+        for (int i = 0; i < len - 1; ++i) {
+            table[pattern[i] & 0xFF] = len - 1 - i;
+        }
+        return table;
+    }
+
+    /**
+     *  Get count of bytes rejected as garbage while seeking headers
+     *
+     * @return total rejected bytes
+     */
+    public long getRejectedBytes() {
+        return rejected.get();
     }
 
     /**
@@ -92,45 +122,67 @@ public abstract class PackageSeeker<H, P> {
         int remaining;
         H head;
         while (start < dataLen) {
-            // try to parse header
-            head = parseHeader(data.slice(start));
-            if (head != null) {
-                // got header with start position
-                return new SeekerResult<>(head, start);
-            }
-            // header not found, check remaining data
-            remaining = dataLen - start;
-            if (remaining < MAX_HEAD_LENGTH) {
-                // waiting for more data
-                break;
+            // check magic code before trying to parse header
+            if (checkMagicCode(data, start)) {
+                // try to parse header
+                head = parseHeader(data.slice(start));
+                if (head != null) {
+                    // got header with start position
+                    return new SeekerResult<>(head, start);
+                }
+                // header not found, check remaining data
+                remaining = dataLen - start;
+                if (remaining < MAX_HEAD_LENGTH) {
+                    // waiting for more data
+                    break;
+                }
             }
             // data error, locate next header
             offset = nextOffset(data, start + 1);
             if (offset < 0) {
                 // header not found
+                remaining = dataLen - start;
                 if (remaining < 65536) {
+                    // skip the garbage, but keep the tail,
+                    // which may be the beginning of next header
+                    offset = dataLen - MAGIC_OFFSET - MAGIC_CODE.length + 1;
+                    if (offset > start) {
+                        rejected.addAndGet(offset - start);
+                        start = offset;
+                    }
                     // waiting for more data
                     break;
                 }
                 // skip the whole buffer
+                rejected.addAndGet(remaining);
                 return new SeekerResult<>(null, -1);
             }
             // try again from new offset
-            start += offset;
+            rejected.addAndGet(offset - start);
+            start = offset;
         }
         // header not found, waiting for more data
         return new SeekerResult<>(null, start);
     }
 
+    // check whether the magic code matches at header position,
+    // return true when data is not enough to tell
+    private boolean checkMagicCode(ByteArray data, int start) {
+        byte[] buffer = data.getBuffer();
+        int pos = data.getOffset() + start + MAGIC_OFFSET;
+        int end = data.getOffset() + data.getSize();
+        int len = MAGIC_CODE.length;
+        for (int i = 0; i < len && pos + i < end; ++i) {
+            if (buffer[pos + i] != MAGIC_CODE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // locate next header
     private int nextOffset(ByteArray data, int start) {
-        start = MAGIC_OFFSET + start;
-        int end = start + MAGIC_CODE.length;
-        if (end > data.getSize()) {
-            // not enough data
-            return -1;
-        }
-        int offset = data.find(MAGIC_CODE, start);
+        int offset = findMagicCode(data, MAGIC_OFFSET + start);
         if (offset < 0) {
             // header not found
             return -1;
@@ -139,6 +191,30 @@ public abstract class PackageSeeker<H, P> {
         return offset - MAGIC_OFFSET;
     }
 
+    // locate next magic code with Boyer-Moore-Horspool,
+    // return position in data, or -1 when not found
+    private int findMagicCode(ByteArray data, int start) {
+        byte[] pattern = MAGIC_CODE;
+        int last = pattern.length - 1;
+        byte[] buffer = data.getBuffer();
+        int base = data.getOffset();
+        int end = base + data.getSize();
+        int pos = base + start;
+        int index;
+        while (pos + last < end) {
+            index = last;
+            while (buffer[pos + index] == pattern[index]) {
+                if (index == 0) {
+                    // got it
+                    return pos - base;
+                }
+                --index;
+            }
+            pos += skipTable[buffer[pos + last] & 0xFF];
+        }
+        return -1;
+    }
+
     /**
      *  Seek data package from received data buffer
      *